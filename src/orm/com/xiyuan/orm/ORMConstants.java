@@ -100,4 +100,30 @@ public interface ORMConstants extends SignConstants, TypeConstants, CodeConstant
     
     public String T_COLUMN_MYSQL               = "select COLUMN_TYPE,IS_NULLABLE from information_schema.columns where table_schema=? and table_name=? and column_name=?";
     public String T_SELECT_IDENTITY            = "select @@IDENTITY";
+    
+    /*****************************************************************************/
+    //连接检查的ping语句，MySQL驱动对ping注释开头的语句发送原生ping
+    /*****************************************************************************/
+    
+    public String P_PING_MYSQL                 = "/* ping */ select 1";
+    public String P_PING_ORACLE                = "select 1 from dual";
+    public String P_PING_MSSQL                 = "select 1";
+    public String P_PING_PSQL                  = "select 1";
+    public String P_PING_SQLITE                = "select 1";
+    public String P_PING_HSQL                  = "select 1 from information_schema.system_users";
+    
+    /*****************************************************************************/
+    //连接检查方式
+    /*****************************************************************************/
+    
+    public String VALIDATION_JDBC4             = "jdbc4";//JDBC4的Connection.isValid
+    public String VALIDATION_PING              = "ping";//数据库策略提供的ping语句
+    public String VALIDATION_METADATA          = "metadata";//查询DatabaseMetaData.getTables，兼容旧驱动
+    
+    /*****************************************************************************/
+    //分片方式
+    /*****************************************************************************/
+    
+    public String SHARD_HASH                   = "hash";//按分片键哈希取模
+    public String SHARD_RANGE                  = "range";//按分片键所在范围
 }
@@ -1,13 +1,22 @@
 package com.xiyuan.orm;
 
+import org.xiyuan.core.Global;
 import org.xiyuan.core.config.Group;
+import org.xiyuan.core.util.Arrays;
 import org.xiyuan.core.util.codes.Base64;
 import org.xiyuan.core.util.codes.HEX;
 
+import com.xiyuan.orm.datasource.ConnectionValidator;
+import com.xiyuan.orm.datasource.ConnectionValidatorJdbc4;
+import com.xiyuan.orm.datasource.ConnectionValidatorMetaData;
+import com.xiyuan.orm.datasource.ConnectionValidatorQuery;
 import com.xiyuan.orm.datasource.SQLDataSource;
+import com.xiyuan.orm.datasource.SQLRoutingDataSource;
+import com.xiyuan.orm.datasource.SQLShardingDataSource;
 
 /**
- * ORM服务需要配置的参数
+ * ORM服务需要配置的参数 <br><br>
+ * 时长参数单位：原有的maxKeepTime、maxIdleTime、outOfConnWaitTime单位为秒，其他时长参数名以Seconds或Ms结尾标明单位为秒或毫秒<br>
  *
  * @version v1.0.0 @author lgz 2016-3-21 新建与整理
  */
@@ -23,26 +32,83 @@ public class ORMParameter implements ORMConstants
     private String pass;
     private int level;
     
+    // 备用URL，分号分隔，和url一起组成连接节点，创建连接时优先选择最健康的节点
+    private String failoverUrls = null;
+    
     // 常用配置三项
     private int minPoolSize = 2;
     private int maxPoolSize = 10;
     private int maxKeepTime = 7001;
     
-    // 连接时效两项
+    // 分片子池数，多核机器上减少借用争抢，<=0表示按CPU核数，默认1表示不分片
+    private int poolStripes = 1;
+    
+    // 延迟绑定，开启后获取的是逻辑连接，执行语句时才借用物理连接，自动提交的语句关闭后即归还，事务期间保持绑定
+    private boolean isLazyBind = false;
+    
+    // 连接时效三项
     private int maxIdleTime = 7001;
+    private int maxKeepTimeJitter = 10;
+    private int maxRetirePerCheck = 0;
     
     // 密码类型
     private String passType = null;
     
-    // 检查连接三项
+    // 检查连接四项，检查间隔单位秒
     private boolean isChkConnOnTimer = false;
     private boolean isGetEffective = false;
     private boolean isChkConnOnRelease = false;
+    private int checkIntervalSeconds = 60;
+    
+    // 检查方式五项，检查超时单位秒，跳过时长和后台检查间隔单位毫秒
+    private String validationType = null;
+    private String validationQuery = null;
+    private int validationTimeoutSeconds = 5;
+    private int validationSkipTimeMs = 500;
+    private int validationIntervalMs = 0;
     
     // 耗尽重试两项
     private int outOfConnWaitTime = 5;
     private int outOfConnRetryCount = 1;
     
+    // 自适应大小三项，滑动窗口单位秒
+    private boolean isAdaptive = false;
+    private int adaptiveWindowSeconds = 60;
+    private int adaptiveHeadroom = 25;
+    
+    // 泄漏检测三项，阈值单位毫秒
+    private int leakDetectionThresholdMs = 0;
+    private int leakTraceSampling = 10;
+    private boolean isLeakReclaim = false;
+    
+    // 超时四项，单位秒，默认0表示不设置，关闭超时默认5秒
+    private int queryTimeoutSeconds = 0;
+    private int networkTimeoutSeconds = 0;
+    private int statementHardTimeoutSeconds = 0;
+    private int closeTimeoutSeconds = 5;
+    
+    // 熔断三项，打开时长单位秒
+    private int breakerFailureThreshold = 0;
+    private int breakerOpenTimeSeconds = 5;
+    private int breakerHalfOpenProbes = 1;
+    
+    // 语句缓存一项
+    private int stmtCacheSize = 0;
+    
+    // 启动预热和恢复重建三项
+    private int initPoolConcurrency = 1;
+    private int initPoolQuorum = 0;
+    private int recoverPoolConcurrency = 4;
+    
+    // 读写分离两项，从库为配置组编号列表，逗号分隔，每个从库配置组和主库配置项相同
+    private String replicas = null;
+    private boolean isReadFromPrimary = true;
+    
+    // 分片三项，分片为配置组编号列表，逗号分隔，范围分片时分界值为升序数值列表，个数为分片数-1
+    private String shards = null;
+    private String shardStrategy = SHARD_HASH;
+    private String shardRanges = null;
+    
     // SQL输出日志两项
     private boolean isUpdateSqlLog = false;
     private boolean isQuerySqlLog = false;
@@ -72,21 +138,63 @@ public class ORMParameter implements ORMConstants
         this.user = group.getString("user");
         this.pass = group.getString("pass");
         this.level = group.getInt("level", -1);
+        this.failoverUrls = group.getString("failoverUrls");
         
         // 其他有默认值
         this.passType = group.getString("passType");
         this.minPoolSize = group.getInt("minPoolSize", 2);
         this.maxPoolSize = group.getInt("maxPoolSize", 10);
+        this.poolStripes = group.getInt("poolStripes", 1);
+        this.isLazyBind = group.isTrue("isLazyBind", false);
         
         this.maxKeepTime = group.getInt("maxKeepTime", 7001);
         this.maxIdleTime = group.getInt("maxIdleTime", this.maxKeepTime);
+        this.maxKeepTimeJitter = group.getInt("maxKeepTimeJitter", 10);
+        this.maxRetirePerCheck = group.getInt("maxRetirePerCheck", 0);
         this.isChkConnOnTimer = group.isTrue("isChkConnOnTimer", false);
         this.isGetEffective = group.isTrue("isGetEffective", false);
         this.isChkConnOnRelease = group.isTrue("isChkConnOnRelease", false);
+        this.checkIntervalSeconds = group.getInt("checkIntervalSeconds", 60);
+        
+        this.validationType = group.getString("validationType");
+        this.validationQuery = group.getString("validationQuery");
+        this.validationTimeoutSeconds = group.getInt("validationTimeoutSeconds", 5);
+        this.validationSkipTimeMs = group.getInt("validationSkipTimeMs", 500);
+        this.validationIntervalMs = group.getInt("validationIntervalMs", 0);
         
         this.outOfConnWaitTime = group.getInt("outOfConnWaitTime", 5);
         this.outOfConnRetryCount = group.getInt("outOfConnRetryCount", 1);
         
+        this.isAdaptive = group.isTrue("isAdaptive", false);
+        this.adaptiveWindowSeconds = group.getInt("adaptiveWindowSeconds", 60);
+        this.adaptiveHeadroom = group.getInt("adaptiveHeadroom", 25);
+        
+        this.leakDetectionThresholdMs = group.getInt("leakDetectionThresholdMs", 0);
+        this.leakTraceSampling = group.getInt("leakTraceSampling", 10);
+        this.isLeakReclaim = group.isTrue("isLeakReclaim", false);
+        
+        this.queryTimeoutSeconds = group.getInt("queryTimeoutSeconds", 0);
+        this.networkTimeoutSeconds = group.getInt("networkTimeoutSeconds", 0);
+        this.statementHardTimeoutSeconds = group.getInt("statementHardTimeoutSeconds", 0);
+        this.closeTimeoutSeconds = group.getInt("closeTimeoutSeconds", 5);
+        
+        this.breakerFailureThreshold = group.getInt("breakerFailureThreshold", 0);
+        this.breakerOpenTimeSeconds = group.getInt("breakerOpenTimeSeconds", 5);
+        this.breakerHalfOpenProbes = group.getInt("breakerHalfOpenProbes", 1);
+        
+        this.stmtCacheSize = group.getInt("stmtCacheSize", 0);
+        
+        this.initPoolConcurrency = group.getInt("initPoolConcurrency", 1);
+        this.initPoolQuorum = group.getInt("initPoolQuorum", 0);
+        this.recoverPoolConcurrency = group.getInt("recoverPoolConcurrency", 4);
+        
+        this.replicas = group.getString("replicas");
+        this.isReadFromPrimary = group.isTrue("isReadFromPrimary", true);
+        
+        this.shards = group.getString("shards");
+        this.shardStrategy = group.getString("shardStrategy", SHARD_HASH);
+        this.shardRanges = group.getString("shardRanges");
+        
         this.isUpdateSqlLog = group.isTrue("isUpdateSqlLog", false);
         this.isQuerySqlLog = group.isTrue("isQuerySqlLog", false);
         
@@ -120,10 +228,135 @@ public class ORMParameter implements ORMConstants
         else if (_BASE64_.equalsIgnoreCase(passType))
             pass = Base64.decodeUTF8(pass);
         
-        return new SQLDataSource(id, driver, url, user, pass, level,
+        SQLDataSource dataSource = new SQLDataSource(id, driver, url, user, pass, level,
                 minPoolSize, maxPoolSize, maxKeepTime, maxIdleTime,
                 isChkConnOnTimer, isGetEffective, isChkConnOnRelease,
                 outOfConnWaitTime, outOfConnRetryCount);
+        
+        dataSource.setPoolStripes(poolStripes);
+        dataSource.setLazyBind(isLazyBind);
+        dataSource.setMaxKeepTimeJitter(maxKeepTimeJitter);
+        dataSource.setMaxRetirePerCheck(maxRetirePerCheck);
+        dataSource.setAdaptiveWindow(adaptiveWindowSeconds);
+        dataSource.setAdaptiveHeadroom(adaptiveHeadroom);
+        dataSource.setAdaptive(isAdaptive);
+        dataSource.setLeakDetectionThresholdMs(leakDetectionThresholdMs);
+        dataSource.setLeakTraceSampling(leakTraceSampling);
+        dataSource.setLeakReclaim(isLeakReclaim);
+        dataSource.setQueryTimeout(queryTimeoutSeconds);
+        dataSource.setNetworkTimeoutMs(networkTimeoutSeconds * 1000);
+        dataSource.setStmtHardTimeoutMs(statementHardTimeoutSeconds * 1000L);
+        dataSource.setCloseTimeoutMs(closeTimeoutSeconds * 1000);
+        dataSource.setBreakerFailureThreshold(breakerFailureThreshold);
+        dataSource.setBreakerOpenTimeMs(breakerOpenTimeSeconds * 1000L);
+        dataSource.setBreakerHalfOpenProbes(breakerHalfOpenProbes);
+        dataSource.setStmtCacheSize(stmtCacheSize);
+        dataSource.setInitConcurrency(initPoolConcurrency);
+        dataSource.setInitQuorum(initPoolQuorum);
+        dataSource.setRecoverConcurrency(recoverPoolConcurrency);
+        dataSource.setCheckTimeMs(checkIntervalSeconds * 1000L);
+        if (failoverUrls != null)
+            dataSource.setFailoverUrls(Arrays.toStringArray(failoverUrls, ";"));
+        
+        dataSource.setValidator(newValidator());
+        dataSource.setValidationTimeout(validationTimeoutSeconds);
+        dataSource.setValidationSkipTimeMs(validationSkipTimeMs);
+        dataSource.setValidationIntervalMs(validationIntervalMs);
+        return dataSource;
+    }
+    
+    /**
+     * 初始化读写分离数据源，主库为当前配置，从库为replicas指定的配置组
+     *
+     * @return                  读写分离数据源
+     * @throws ORMException     从库配置组不存在时抛出异常
+     */
+    public SQLRoutingDataSource newRoutingDatabase() throws ORMException
+    {
+        String[] ids = replicas == null ? new String[0] : Arrays.toStringArray(replicas);
+        SQLDataSource[] replicaSources = new SQLDataSource[ids.length];
+        for (int i = 0; i < ids.length; i++)
+        {
+            Group group = Global.getGroup(ids[i]);
+            if (group == null)
+                throw new ORMException("读写分离数据源[%s]的从库配置组[%s]不存在", id, ids[i]);
+            
+            replicaSources[i] = new ORMParameter(group).newDatabase();
+            replicaSources[i].setReadOnly(true);
+        }
+        
+        SQLRoutingDataSource dataSource = new SQLRoutingDataSource(id, newDatabase(), replicaSources);
+        dataSource.setReadFromPrimary(isReadFromPrimary);
+        return dataSource;
+    }
+    
+    /**
+     * 初始化分片数据源，分片为shards指定的配置组，当前配置只提供分片方式和分界值
+     *
+     * @return                  分片数据源
+     * @throws ORMException     分片配置组不存在或分片参数不正确时抛出异常
+     */
+    public SQLShardingDataSource newShardingDatabase() throws ORMException
+    {
+        String[] ids = shards == null ? new String[0] : Arrays.toStringArray(shards);
+        if (ids.length == 0)
+            throw new ORMException("分片数据源[%s]没有配置分片", id);
+        
+        long[] ranges = null;
+        if (SHARD_RANGE.equalsIgnoreCase(shardStrategy))
+        {
+            String[] values = shardRanges == null ? new String[0] : Arrays.toStringArray(shardRanges);
+            if (values.length != ids.length - 1)
+                throw new ORMException("分片数据源[%s]范围分界值个数应为分片数-1[shardRanges:%s,shards:%s]", id, shardRanges, shards);
+            
+            ranges = new long[values.length];
+            for (int i = 0; i < values.length; i++)
+            {
+                try
+                {
+                    ranges[i] = Long.parseLong(values[i].trim());
+                }
+                catch (NumberFormatException e)
+                {
+                    throw new ORMException("分片数据源[%s]范围分界值不是数值[%s]", id, values[i]);
+                }
+                
+                if (i > 0 && ranges[i] <= ranges[i - 1])
+                    throw new ORMException("分片数据源[%s]范围分界值应为升序[%s]", id, shardRanges);
+            }
+        }
+        else if (!SHARD_HASH.equalsIgnoreCase(shardStrategy))
+        {
+            throw new ORMException("分片数据源[%s]分片方式[%s]不支持，应为hash或range", id, shardStrategy);
+        }
+        
+        SQLDataSource[] shardSources = new SQLDataSource[ids.length];
+        for (int i = 0; i < ids.length; i++)
+        {
+            Group group = Global.getGroup(ids[i]);
+            if (group == null)
+                throw new ORMException("分片数据源[%s]的分片配置组[%s]不存在", id, ids[i]);
+            
+            shardSources[i] = new ORMParameter(group).newDatabase();
+        }
+        
+        return new SQLShardingDataSource(id, ranges, shardSources);
+    }
+    
+    /** 生成连接检查策略，未指定时有ping语句的用ping语句，否则用JDBC4的isValid */
+    private ConnectionValidator newValidator()
+    {
+        if (VALIDATION_METADATA.equalsIgnoreCase(validationType))
+            return new ConnectionValidatorMetaData();
+        
+        if (VALIDATION_JDBC4.equalsIgnoreCase(validationType))
+            return new ConnectionValidatorJdbc4();
+        
+        String sql = validationQuery;
+        if (sql == null && dbType != null)
+            sql = ORMType.getDatabasePingSQL(dbType);
+        
+        return sql == null ? new ConnectionValidatorJdbc4() : new ConnectionValidatorQuery(sql);
     }
     
     /***********************************************************************************/
@@ -351,6 +584,26 @@ public class ORMParameter implements ORMConstants
         this.level = level;
     }
     
+    public int getPoolStripes()
+    {
+        return poolStripes;
+    }
+    
+    public void setPoolStripes(int poolStripes)
+    {
+        this.poolStripes = poolStripes;
+    }
+    
+    public boolean isLazyBind()
+    {
+        return isLazyBind;
+    }
+    
+    public void setLazyBind(boolean isLazyBind)
+    {
+        this.isLazyBind = isLazyBind;
+    }
+    
     public int getMinPoolSize()
     {
         return minPoolSize;
@@ -376,6 +629,7 @@ public class ORMParameter implements ORMConstants
         return maxKeepTime;
     }
     
+    /** 设置最大保持时长，单位秒 */
     public void setMaxKeepTime(int maxKeepTime)
     {
         this.maxKeepTime = maxKeepTime;
@@ -386,6 +640,7 @@ public class ORMParameter implements ORMConstants
         return maxIdleTime;
     }
     
+    /** 设置最大空闲时长，单位秒 */
     public void setMaxIdleTime(int maxIdleTime)
     {
         this.maxIdleTime = maxIdleTime;
@@ -426,6 +681,7 @@ public class ORMParameter implements ORMConstants
         return outOfConnWaitTime;
     }
     
+    /** 设置连接耗尽时每次等待时长，单位秒 */
     public void setOutOfConnWaitTime(int outOfConnWaitTime)
     {
         this.outOfConnWaitTime = outOfConnWaitTime;
@@ -440,4 +696,326 @@ public class ORMParameter implements ORMConstants
     {
         this.outOfConnRetryCount = outOfConnRetryCount;
     }
+    
+    public int getInitPoolConcurrency()
+    {
+        return initPoolConcurrency;
+    }
+    
+    public void setInitPoolConcurrency(int initPoolConcurrency)
+    {
+        this.initPoolConcurrency = initPoolConcurrency;
+    }
+    
+    public int getInitPoolQuorum()
+    {
+        return initPoolQuorum;
+    }
+    
+    public void setInitPoolQuorum(int initPoolQuorum)
+    {
+        this.initPoolQuorum = initPoolQuorum;
+    }
+    
+    public int getRecoverPoolConcurrency()
+    {
+        return recoverPoolConcurrency;
+    }
+    
+    public void setRecoverPoolConcurrency(int recoverPoolConcurrency)
+    {
+        this.recoverPoolConcurrency = recoverPoolConcurrency;
+    }
+    
+    public String getValidationType()
+    {
+        return validationType;
+    }
+    
+    public void setValidationType(String validationType)
+    {
+        this.validationType = validationType;
+    }
+    
+    public String getValidationQuery()
+    {
+        return validationQuery;
+    }
+    
+    public void setValidationQuery(String validationQuery)
+    {
+        this.validationQuery = validationQuery;
+    }
+    
+    public int getValidationTimeoutSeconds()
+    {
+        return validationTimeoutSeconds;
+    }
+    
+    /** 设置检查连接超时时长，单位秒，=0表示不限制 */
+    public void setValidationTimeoutSeconds(int validationTimeoutSeconds)
+    {
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+    }
+    
+    public int getValidationSkipTimeMs()
+    {
+        return validationSkipTimeMs;
+    }
+    
+    /** 设置连接最近使用过多长时间内不再检查，单位毫秒，=0表示每次都检查 */
+    public void setValidationSkipTimeMs(int validationSkipTimeMs)
+    {
+        this.validationSkipTimeMs = validationSkipTimeMs;
+    }
+    
+    public int getCheckIntervalSeconds()
+    {
+        return checkIntervalSeconds;
+    }
+    
+    /** 设置监视检查间隔，单位秒，最短1秒 */
+    public void setCheckIntervalSeconds(int checkIntervalSeconds)
+    {
+        this.checkIntervalSeconds = checkIntervalSeconds;
+    }
+    
+    public int getValidationIntervalMs()
+    {
+        return validationIntervalMs;
+    }
+    
+    /** 设置空闲连接后台检查间隔，单位毫秒，=0表示不开启 */
+    public void setValidationIntervalMs(int validationIntervalMs)
+    {
+        this.validationIntervalMs = validationIntervalMs;
+    }
+    
+    public int getMaxKeepTimeJitter()
+    {
+        return maxKeepTimeJitter;
+    }
+    
+    public void setMaxKeepTimeJitter(int maxKeepTimeJitter)
+    {
+        this.maxKeepTimeJitter = maxKeepTimeJitter;
+    }
+    
+    public int getMaxRetirePerCheck()
+    {
+        return maxRetirePerCheck;
+    }
+    
+    public void setMaxRetirePerCheck(int maxRetirePerCheck)
+    {
+        this.maxRetirePerCheck = maxRetirePerCheck;
+    }
+    
+    public int getStmtCacheSize()
+    {
+        return stmtCacheSize;
+    }
+    
+    public void setStmtCacheSize(int stmtCacheSize)
+    {
+        this.stmtCacheSize = stmtCacheSize;
+    }
+    
+    public int getLeakDetectionThresholdMs()
+    {
+        return leakDetectionThresholdMs;
+    }
+    
+    /** 设置连接泄漏检测阈值，单位毫秒，=0表示不开启 */
+    public void setLeakDetectionThresholdMs(int leakDetectionThresholdMs)
+    {
+        this.leakDetectionThresholdMs = leakDetectionThresholdMs;
+    }
+    
+    public int getLeakTraceSampling()
+    {
+        return leakTraceSampling;
+    }
+    
+    public void setLeakTraceSampling(int leakTraceSampling)
+    {
+        this.leakTraceSampling = leakTraceSampling;
+    }
+    
+    public boolean isLeakReclaim()
+    {
+        return isLeakReclaim;
+    }
+    
+    public void setLeakReclaim(boolean isLeakReclaim)
+    {
+        this.isLeakReclaim = isLeakReclaim;
+    }
+    
+    public boolean isAdaptive()
+    {
+        return isAdaptive;
+    }
+    
+    public void setAdaptive(boolean isAdaptive)
+    {
+        this.isAdaptive = isAdaptive;
+    }
+    
+    public int getAdaptiveWindowSeconds()
+    {
+        return adaptiveWindowSeconds;
+    }
+    
+    /** 设置自适应滑动窗口时长，单位秒 */
+    public void setAdaptiveWindowSeconds(int adaptiveWindowSeconds)
+    {
+        this.adaptiveWindowSeconds = adaptiveWindowSeconds;
+    }
+    
+    public int getAdaptiveHeadroom()
+    {
+        return adaptiveHeadroom;
+    }
+    
+    public void setAdaptiveHeadroom(int adaptiveHeadroom)
+    {
+        this.adaptiveHeadroom = adaptiveHeadroom;
+    }
+    
+    public String getReplicas()
+    {
+        return replicas;
+    }
+    
+    public void setReplicas(String replicas)
+    {
+        this.replicas = replicas;
+    }
+    
+    public boolean isReadFromPrimary()
+    {
+        return isReadFromPrimary;
+    }
+    
+    public void setReadFromPrimary(boolean isReadFromPrimary)
+    {
+        this.isReadFromPrimary = isReadFromPrimary;
+    }
+    
+    public String getShards()
+    {
+        return shards;
+    }
+    
+    public void setShards(String shards)
+    {
+        this.shards = shards;
+    }
+    
+    public String getShardStrategy()
+    {
+        return shardStrategy;
+    }
+    
+    public void setShardStrategy(String shardStrategy)
+    {
+        this.shardStrategy = shardStrategy;
+    }
+    
+    public String getShardRanges()
+    {
+        return shardRanges;
+    }
+    
+    public void setShardRanges(String shardRanges)
+    {
+        this.shardRanges = shardRanges;
+    }
+    
+    public String getFailoverUrls()
+    {
+        return failoverUrls;
+    }
+    
+    public void setFailoverUrls(String failoverUrls)
+    {
+        this.failoverUrls = failoverUrls;
+    }
+    
+    public int getBreakerFailureThreshold()
+    {
+        return breakerFailureThreshold;
+    }
+    
+    /** 设置连续创建连接失败多少次打开熔断器，默认=0表示不开启 */
+    public void setBreakerFailureThreshold(int breakerFailureThreshold)
+    {
+        this.breakerFailureThreshold = breakerFailureThreshold;
+    }
+    
+    public int getBreakerOpenTimeSeconds()
+    {
+        return breakerOpenTimeSeconds;
+    }
+    
+    /** 设置熔断器打开时长，单位秒，到期后转为半开 */
+    public void setBreakerOpenTimeSeconds(int breakerOpenTimeSeconds)
+    {
+        this.breakerOpenTimeSeconds = breakerOpenTimeSeconds;
+    }
+    
+    public int getBreakerHalfOpenProbes()
+    {
+        return breakerHalfOpenProbes;
+    }
+    
+    public void setBreakerHalfOpenProbes(int breakerHalfOpenProbes)
+    {
+        this.breakerHalfOpenProbes = breakerHalfOpenProbes;
+    }
+    
+    public int getQueryTimeoutSeconds()
+    {
+        return queryTimeoutSeconds;
+    }
+    
+    /** 设置语句默认执行超时，单位秒，=0表示不设置 */
+    public void setQueryTimeoutSeconds(int queryTimeoutSeconds)
+    {
+        this.queryTimeoutSeconds = queryTimeoutSeconds;
+    }
+    
+    public int getNetworkTimeoutSeconds()
+    {
+        return networkTimeoutSeconds;
+    }
+    
+    /** 设置连接默认网络超时，单位秒，=0表示不设置 */
+    public void setNetworkTimeoutSeconds(int networkTimeoutSeconds)
+    {
+        this.networkTimeoutSeconds = networkTimeoutSeconds;
+    }
+    
+    public int getStatementHardTimeoutSeconds()
+    {
+        return statementHardTimeoutSeconds;
+    }
+    
+    /** 设置语句硬超时，单位秒，超时后由后台取消或中止连接，=0表示不开启 */
+    public void setStatementHardTimeoutSeconds(int statementHardTimeoutSeconds)
+    {
+        this.statementHardTimeoutSeconds = statementHardTimeoutSeconds;
+    }
+    
+    public int getCloseTimeoutSeconds()
+    {
+        return closeTimeoutSeconds;
+    }
+    
+    /** 设置关闭物理连接的超时时长，单位秒，=0表示不设置 */
+    public void setCloseTimeoutSeconds(int closeTimeoutSeconds)
+    {
+        this.closeTimeoutSeconds = closeTimeoutSeconds;
+    }
 }
@@ -45,6 +45,13 @@ public interface ORMPolicy extends ORMConstants
      */
     public String toColumnType(String type);
     
+    /**
+     * 生成检查连接有效性的ping语句，要求开销最小，不访问业务表
+     *
+     * @return              SQL语句
+     */
+    public String toPingSQL();
+    
     // /**
     // * 生成字段字符串
     // *
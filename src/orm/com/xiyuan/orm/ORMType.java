@@ -128,6 +128,18 @@ public class ORMType implements ORMConstants
         return types;
     }
     
+    /**
+     * 获取数据库检查连接的ping语句，由数据库策略提供，ping语句与服务无关
+     *
+     * @param dbType    数据库类型
+     * @return          ping语句，=null表示不支持的数据库类型
+     */
+    public static String getDatabasePingSQL(String dbType)
+    {
+        ORMPolicy policy = getDatabasePolicy(null, dbType);
+        return policy == null ? null : policy.toPingSQL();
+    }
+    
     /**********************************************************************/
     // 字段类型
     /**********************************************************************/
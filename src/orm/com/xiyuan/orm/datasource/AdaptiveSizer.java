@@ -0,0 +1,125 @@
+package com.xiyuan.orm.datasource;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 数据库连接池自适应大小计算器，按滑动窗口统计需求计算目标连接数 <br><br>
+ * 1.借用时记录借用数和等待时长，借还时记录峰值并发，均为原子操作<br>
+ * 2.后台维护线程每个采样周期采样一次，窗口内保留最近若干个采样<br>
+ * 3.目标连接数=窗口内最大需求(峰值并发+等待者)*借用速率上升比例*(1+余量百分比)，有等待时再加上等待者数，限定在[最小连接数,最大连接数]<br>
+ * 4.只由后台维护线程调用sample()，采样窗口不加锁<br>
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+final class AdaptiveSizer
+{
+    private static final double MAX_TREND = 2; // 借用速率上升比例最多按2倍提前扩容
+    
+    private final int[] demands;
+    private final long[] borrows;
+    private int index;
+    private int count;
+    
+    private final AtomicLong borrowCount;
+    private final AtomicLong borrowWaitNs;
+    private final AtomicInteger peakActive;
+    
+    private volatile int lastTarget;
+    private volatile long lastWaitMs;
+    
+    /**
+     * 构造函数
+     *
+     * @param windowSamples 窗口内采样个数
+     */
+    public AdaptiveSizer(int windowSamples)
+    {
+        this.demands = new int[Math.max(windowSamples, 1)];
+        this.borrows = new long[demands.length];
+        this.borrowCount = new AtomicLong(0);
+        this.borrowWaitNs = new AtomicLong(0);
+        this.peakActive = new AtomicInteger(0);
+    }
+    
+    /** 记录一次借用和等待时长 */
+    public void recordBorrow(long waitNs)
+    {
+        borrowCount.incrementAndGet();
+        borrowWaitNs.addAndGet(waitNs);
+    }
+    
+    /** 记录当前活跃数，保留采样周期内的峰值 */
+    public void recordActive(int active)
+    {
+        int peak;
+        while (active > (peak = peakActive.get()))
+        {
+            if (peakActive.compareAndSet(peak, active))
+                break;
+        }
+    }
+    
+    /**
+     * 采样并计算目标连接数
+     *
+     * @param active        当前活跃数
+     * @param waiters       当前等待者数
+     * @param headroom      余量百分比
+     * @param minSize       最小连接数
+     * @param maxSize       最大连接数
+     * @return              目标连接数
+     */
+    public int sample(int active, int waiters, int headroom, int minSize, int maxSize)
+    {
+        int peak = Math.max(peakActive.getAndSet(active), active);
+        long borrow = borrowCount.getAndSet(0);
+        long waitNs = borrowWaitNs.getAndSet(0);
+        
+        demands[index] = peak + waiters;
+        borrows[index] = borrow;
+        index = (index + 1) % demands.length;
+        if (count < demands.length)
+            count++;
+        
+        // 窗口内最大需求和平均借用数
+        int maxDemand = 0;
+        long sumBorrow = 0;
+        for (int i = 0; i < count; i++)
+        {
+            maxDemand = Math.max(maxDemand, demands[i]);
+            sumBorrow += borrows[i];
+        }
+        
+        // 最近采样的借用速率高于窗口平均时按比例提前扩容
+        double trend = 1;
+        if (sumBorrow > 0 && borrow > 0)
+            trend = Math.min(Math.max((double)borrow * count / sumBorrow, 1), MAX_TREND);
+        
+        int target = (int)Math.ceil(maxDemand * trend * (100 + headroom) / 100);
+        lastWaitMs = borrow == 0 ? 0 : waitNs / borrow / 1000000;
+        if (lastWaitMs > 0)
+            target += waiters;
+        
+        lastTarget = Math.max(minSize, Math.min(target, maxSize));
+        return lastTarget;
+    }
+    
+    /** 获取窗口时长内的采样个数 */
+    public int getWindowSamples()
+    {
+        return demands.length;
+    }
+    
+    /** 获取最近一次计算的目标连接数 */
+    public int getLastTarget()
+    {
+        return lastTarget;
+    }
+    
+    /** 获取最近一个采样周期的平均等待毫秒数 */
+    public long getLastWaitMs()
+    {
+        return lastWaitMs;
+    }
+}
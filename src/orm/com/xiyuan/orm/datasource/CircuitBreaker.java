@@ -0,0 +1,213 @@
+package com.xiyuan.orm.datasource;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xiyuan.core.logging.Log;
+import org.xiyuan.core.logging.LogFactory;
+
+/**
+ * 数据库连接池熔断器，数据库不可用时让获取连接快速失败，避免业务线程堆积在等待上 <br><br>
+ * 1.关闭状态，正常等待，连续创建连接失败达到阈值或监视线程检查到数据库断开时打开<br>
+ * 2.打开状态，需要等待的获取连接直接拒绝，到打开时长后转为半开，监视线程检查到数据库恢复时立即可转半开，创建连接成功时直接关闭<br>
+ * 3.半开状态，只放行探测名额个数的获取连接，探测借到连接或创建连接成功时关闭，探测超时或创建失败时重新打开<br>
+ * 4.只拦截需要新建连接的获取连接，有空闲连接时仍直接借出，已到最大连接数时等待归还不拦截<br>
+ * 5.连续失败阈值默认=0不开启，需要时配置阈值开启<br>
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+final class CircuitBreaker
+{
+    private static final Log log = LogFactory.getLog("database.log");
+    
+    public static final int CLOSED = 0;
+    public static final int OPEN = 1;
+    public static final int HALF_OPEN = 2;
+    
+    private final String id;
+    private final AtomicInteger state;
+    private final AtomicInteger failures; // 连续创建连接失败数
+    private final AtomicInteger permits; // 半开状态剩余的探测名额
+    private final AtomicLong rejects; // 拒绝的获取连接数
+    private volatile long openUntilMs; // 打开状态的截止时间
+    
+    private volatile int failureThreshold = 0; // 连续创建连接失败多少次打开，=0表示不开启
+    private volatile long openTimeMs = 5000; // 打开时长，到期后转为半开
+    private volatile int halfOpenProbes = 1; // 半开状态放行的探测数
+    
+    public CircuitBreaker(String id)
+    {
+        this.id = id;
+        this.state = new AtomicInteger(CLOSED);
+        this.failures = new AtomicInteger(0);
+        this.permits = new AtomicInteger(0);
+        this.rejects = new AtomicLong(0);
+    }
+    
+    /** 判断是否允许为获取连接新建连接，打开到期时转为半开，半开时占用一个探测名额 */
+    public boolean allow()
+    {
+        if (failureThreshold <= 0 || state.get() == CLOSED)
+            return true;
+        
+        if (state.get() == OPEN)
+        {
+            if (System.currentTimeMillis() < openUntilMs)
+            {
+                rejects.incrementAndGet();
+                return false;
+            }
+            
+            if (state.compareAndSet(OPEN, HALF_OPEN))
+            {
+                permits.set(halfOpenProbes);
+                log.info("数据库连接池[%s]熔断器转为半开，放行%s个探测", id, halfOpenProbes);
+            }
+        }
+        
+        for (;;)
+        {
+            int p = permits.get();
+            if (p <= 0)
+                break;
+            
+            if (permits.compareAndSet(p, p - 1))
+                return true;
+        }
+        
+        rejects.incrementAndGet();
+        return false;
+    }
+    
+    /** 借到连接，半开时探测成功关闭熔断器 */
+    public void onBorrow()
+    {
+        if (state.get() == HALF_OPEN)
+            close("探测借到连接");
+    }
+    
+    /** 等待获取连接超时，半开时探测失败重新打开 */
+    public void onTimeout()
+    {
+        if (state.get() == HALF_OPEN)
+            open("探测获取连接超时");
+    }
+    
+    /** 创建连接成功，清除连续失败数，数据库已能连上，打开或半开时关闭熔断器 */
+    public void onCreateSuccess()
+    {
+        if (failures.get() != 0)
+            failures.set(0);
+        
+        if (state.get() != CLOSED)
+            close("创建连接成功");
+    }
+    
+    /** 创建连接失败，连续失败达到阈值或半开时打开熔断器 */
+    public void onCreateFailure()
+    {
+        int count = failures.incrementAndGet();
+        int s = state.get();
+        if (s == HALF_OPEN || (s == CLOSED && failureThreshold > 0 && count >= failureThreshold))
+            open("连续创建连接失败" + count + "次");
+    }
+    
+    /** 监视线程检查数据库状态，断开时打开熔断器，恢复时打开状态提前到期转为半开 */
+    public void onDbCheck(boolean isDbBreak)
+    {
+        if (failureThreshold <= 0)
+            return;
+        
+        if (isDbBreak)
+            open("检查到数据库断开");
+        else if (state.get() == OPEN)
+            openUntilMs = 0;
+    }
+    
+    /** 打开熔断器 */
+    private void open(String reason)
+    {
+        permits.set(0);
+        openUntilMs = System.currentTimeMillis() + openTimeMs;
+        if (state.getAndSet(OPEN) != OPEN)
+            log.error("数据库连接池[%s]熔断器打开，%s，%s毫秒内获取连接快速失败", id, reason, openTimeMs);
+    }
+    
+    /** 关闭熔断器 */
+    private void close(String reason)
+    {
+        int s = state.get();
+        if (s != CLOSED && state.compareAndSet(s, CLOSED))
+        {
+            failures.set(0);
+            log.info("数据库连接池[%s]熔断器关闭，%s", id, reason);
+        }
+    }
+    
+    /***********************************/
+    // 参数信息
+    /***********************************/
+    
+    public int getState()
+    {
+        return state.get();
+    }
+    
+    public boolean isOpen()
+    {
+        return failureThreshold > 0 && state.get() == OPEN;
+    }
+    
+    public String getStateName()
+    {
+        switch (state.get())
+        {
+            case OPEN:
+                return "OPEN";
+            case HALF_OPEN:
+                return "HALF_OPEN";
+            default:
+                return "CLOSED";
+        }
+    }
+    
+    public long getRejects()
+    {
+        return rejects.get();
+    }
+    
+    public int getFailureThreshold()
+    {
+        return failureThreshold;
+    }
+    
+    public void setFailureThreshold(int failureThreshold)
+    {
+        this.failureThreshold = failureThreshold;
+        if (failureThreshold <= 0)
+        {// 不开启时恢复为关闭状态
+            state.set(CLOSED);
+            failures.set(0);
+        }
+    }
+    
+    public long getOpenTimeMs()
+    {
+        return openTimeMs;
+    }
+    
+    public void setOpenTimeMs(long openTimeMs)
+    {
+        this.openTimeMs = openTimeMs;
+    }
+    
+    public int getHalfOpenProbes()
+    {
+        return halfOpenProbes;
+    }
+    
+    public void setHalfOpenProbes(int halfOpenProbes)
+    {
+        this.halfOpenProbes = Math.max(halfOpenProbes, 1);
+    }
+}
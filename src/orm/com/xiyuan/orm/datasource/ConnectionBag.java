@@ -0,0 +1,469 @@
+package com.xiyuan.orm.datasource;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 数据库连接池容器，参照HikariCP的ConcurrentBag实现无锁借还 <br><br>
+ * 1.sharedList为池内所有连接，读多写少采用CopyOnWriteArrayList<br>
+ * 2.threadList为当前线程最近归还的连接，借用时优先从本线程最近使用的连接中抢占<br>
+ * 3.连接状态由SQLConnection.state维护，通过CAS在空闲/使用中/预留/已移除之间切换，借还均不需要全局锁<br>
+ * 4.waitQueue为先来先得的等待队列，同步借用线程和异步借用者按登记顺序排在同一个队列中，归还和新建的连接先抢占再移交给最早的等待者，不会被插队<br>
+ * 5.同步借用线程在自己的等待者上阻塞，异步借用者不占用线程，移交时直接完成异步借用结果<br>
+ * 6.stripes为分片子池，开启后连接按数目均衡分到各子池，借用时先查本线程所属的子池，为空时再依次窃取其他子池，<br>
+ *   多核下借用线程从不同位置开始抢占，避免所有线程争抢列表头部同几个连接的缓存行，连接总数仍由连接池全局名额控制<br>
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+final class ConnectionBag
+{
+    private static final int THREAD_LIST_MAX = 16; // 线程本地最多记录16个最近使用的连接
+    
+    private final CopyOnWriteArrayList<SQLConnection> sharedList;
+    private volatile List<CopyOnWriteArrayList<SQLConnection>> stripes; // 分片子池，=null表示不分片
+    private final ThreadLocal<List<WeakReference<SQLConnection>>> threadList;
+    private final ConcurrentLinkedQueue<Waiter> waitQueue;
+    private final AtomicInteger waiters;
+    
+    public ConnectionBag()
+    {
+        this.sharedList = new CopyOnWriteArrayList<>();
+        this.threadList = new ThreadLocal<List<WeakReference<SQLConnection>>>()
+        {
+            protected List<WeakReference<SQLConnection>> initialValue()
+            {
+                return new ArrayList<>(THREAD_LIST_MAX);
+            }
+        };
+        this.waitQueue = new ConcurrentLinkedQueue<>();
+        this.waiters = new AtomicInteger(0);
+    }
+    
+    /**
+     * 设置分片子池数，已有连接按顺序重新分配，需在连接池启动前设置
+     *
+     * @param count 分片子池数，<=1表示不分片
+     */
+    public synchronized void setStripes(int count)
+    {
+        if (count <= 1)
+        {
+            stripes = null;
+            return;
+        }
+        
+        List<CopyOnWriteArrayList<SQLConnection>> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            list.add(new CopyOnWriteArrayList<SQLConnection>());
+        }
+        
+        int i = 0;
+        for (SQLConnection conn : sharedList)
+        {
+            conn.setStripe(i);
+            list.get(i).add(conn);
+            i = (i + 1) % count;
+        }
+        
+        stripes = Collections.unmodifiableList(list);
+    }
+    
+    /** 获取分片子池数，=1表示不分片 */
+    public int getStripes()
+    {
+        List<CopyOnWriteArrayList<SQLConnection>> s = stripes;
+        return s == null ? 1 : s.size();
+    }
+    
+    /**
+     * 借用一个空闲连接，成功时连接状态已置为使用中
+     *
+     * @return 空闲连接，=null表示没有空闲连接
+     */
+    public SQLConnection borrow()
+    {
+        // 1.先从本线程最近归还的连接中倒序查找，最近的最可能仍空闲
+        List<WeakReference<SQLConnection>> list = threadList.get();
+        for (int i = list.size() - 1; i >= 0; i--)
+        {
+            SQLConnection conn = list.remove(i).get();
+            if (conn != null && conn.compareAndSetState(SQLConnection.STATE_IDLE, SQLConnection.STATE_ACTIVE))
+                return conn;
+        }
+        
+        // 2.再从共享列表中查找，分片时先查本线程所属的子池，为空时依次窃取其他子池
+        return borrowShared();
+    }
+    
+    /** 从共享列表或分片子池中抢占一个空闲连接，没有返回null */
+    private SQLConnection borrowShared()
+    {
+        List<CopyOnWriteArrayList<SQLConnection>> s = stripes;
+        if (s == null)
+            return borrow(sharedList);
+        
+        int count = s.size();
+        int home = (int)(Thread.currentThread().getId() % count);
+        for (int i = 0; i < count; i++)
+        {
+            SQLConnection conn = borrow(s.get((home + i) % count));
+            if (conn != null)
+                return conn;
+        }
+        
+        return null;
+    }
+    
+    /** 从列表中按顺序抢占一个空闲连接，没有返回null */
+    private static SQLConnection borrow(List<SQLConnection> list)
+    {
+        for (SQLConnection conn : list)
+        {
+            if (conn.compareAndSetState(SQLConnection.STATE_IDLE, SQLConnection.STATE_ACTIVE))
+                return conn;
+        }
+        
+        return null;
+    }
+    
+    /**
+     * 等待借用一个连接，先登记为等待者再扫描一次，然后在自己的等待者上阻塞，按登记顺序接收移交的连接，直到截止时间
+     *
+     * @param timeoutNanos  最长等待纳秒数
+     * @return              使用中的连接，=null表示超时
+     * @throws InterruptedException 等待被中断
+     */
+    public SQLConnection borrow(long timeoutNanos) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + timeoutNanos;
+        ThreadWaiter waiter = new ThreadWaiter();
+        enqueue(waiter);
+        
+        // 1.登记后再扫描一次，避免错过登记前刚归还或新建的连接
+        SQLConnection idle = borrowShared();
+        if (idle != null)
+        {
+            SQLConnection handed = cancel(waiter);
+            if (handed == null)
+                return idle;
+            
+            // 扫描期间已被移交了连接，扫描到的连接移交给下一个等待者
+            reoffer(idle);
+            return handed;
+        }
+        
+        // 2.等待移交，超时或中断时取消，取消时刚好移交过来的连接超时仍返回，中断则移交给下一个等待者
+        for (;;)
+        {
+            SQLConnection conn = waiter.get();
+            if (conn != null)
+                return conn;
+            
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                return cancel(waiter);
+            
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted())
+            {
+                conn = cancel(waiter);
+                if (conn != null)
+                    reoffer(conn);
+                throw new InterruptedException();
+            }
+        }
+    }
+    
+    /**
+     * 异步借用一个连接，先登记为异步等待者再扫描一次，扫描到空闲连接直接完成，否则按登记顺序等归还或新建的连接移交
+     *
+     * @param future    异步借用结果
+     */
+    public void borrowAsync(ConnectionFuture future)
+    {
+        enqueue(new FutureWaiter(future));
+        if (future.isDone())
+            return;
+        
+        SQLConnection conn = borrowShared();
+        if (conn == null)
+            return;
+        
+        if (future.complete(conn))
+        {
+            removeAsync(future);
+            return;
+        }
+        
+        // 扫描期间已被移交了连接或已取消，抢到的连接移交给下一个等待者
+        reoffer(conn);
+    }
+    
+    /** 移除一个异步等待者，超时或取消时调用 */
+    public void removeAsync(ConnectionFuture future)
+    {
+        for (Waiter waiter : waitQueue)
+        {
+            if (waiter instanceof FutureWaiter && ((FutureWaiter)waiter).future == future)
+            {
+                dequeue(waiter);
+                return;
+            }
+        }
+    }
+    
+    /** 清空异步等待者，返回清空前的所有异步等待者，同步等待者到截止时间自行退出，连接池关闭时调用 */
+    public List<ConnectionFuture> clearAsync()
+    {
+        List<ConnectionFuture> list = new ArrayList<>();
+        for (Waiter waiter : waitQueue)
+        {
+            if (waiter instanceof FutureWaiter && dequeue(waiter))
+                list.add(((FutureWaiter)waiter).future);
+        }
+        return list;
+    }
+    
+    /** 登记等待者，排在等待队列末尾 */
+    private void enqueue(Waiter waiter)
+    {
+        waiters.incrementAndGet();
+        waitQueue.add(waiter);
+    }
+    
+    /** 移出等待者，已被移交时取出的不再重复计数，移出成功返回true */
+    private boolean dequeue(Waiter waiter)
+    {
+        if (!waitQueue.remove(waiter))
+            return false;
+        
+        waiters.decrementAndGet();
+        return true;
+    }
+    
+    /** 取消同步等待者并移出等待队列，取消前已移交连接时返回该连接 */
+    private SQLConnection cancel(ThreadWaiter waiter)
+    {
+        SQLConnection conn = waiter.cancel();
+        dequeue(waiter);
+        return conn;
+    }
+    
+    /** 已抢占但不再需要的连接恢复空闲，有等待者时移交给下一个等待者 */
+    private void reoffer(SQLConnection conn)
+    {
+        conn.setState(SQLConnection.STATE_IDLE);
+        handoff(conn);
+    }
+    
+    /**
+     * 归还一个连接，CAS从使用中置为空闲，有等待者时直接移交，否则记录到本线程最近使用列表
+     *
+     * @param conn  使用中的连接
+     * @return      =true表示已归还，=false表示连接不在使用中（已归还、已移出或已预留），不做处理
+     */
+    public boolean requite(SQLConnection conn)
+    {
+        if (!conn.compareAndSetState(SQLConnection.STATE_ACTIVE, SQLConnection.STATE_IDLE))
+            return false;
+        
+        if (handoff(conn))
+            return true;
+        
+        List<WeakReference<SQLConnection>> list = threadList.get();
+        if (list.size() < THREAD_LIST_MAX)
+            list.add(new WeakReference<>(conn));
+        
+        return true;
+    }
+    
+    /** 增加一个连接到池中，分片时加到连接数最少的子池 */
+    public void add(SQLConnection conn)
+    {
+        List<CopyOnWriteArrayList<SQLConnection>> s = stripes;
+        if (s != null)
+        {
+            int ind = 0;
+            for (int i = 1; i < s.size(); i++)
+            {
+                if (s.get(i).size() < s.get(ind).size())
+                    ind = i;
+            }
+            
+            conn.setStripe(ind);
+            s.get(ind).add(conn);
+        }
+        
+        sharedList.add(conn);
+        handoff(conn);
+    }
+    
+    /**
+     * 有等待者时把空闲连接按登记顺序移交给最早的等待者，同步和异步等待者同一顺序，已超时或取消的跳过 <br>
+     * 先抢占再取等待者，取出的等待者一定能拿到连接，恢复空闲后再检查一次队列，避免和正在登记的等待者错过
+     *
+     * @param conn  空闲连接
+     * @return      =true表示已移交或已被他人取走，=false表示没有等待者
+     */
+    private boolean handoff(SQLConnection conn)
+    {
+        while (!waitQueue.isEmpty())
+        {
+            if (!conn.compareAndSetState(SQLConnection.STATE_IDLE, SQLConnection.STATE_ACTIVE))
+                return true;
+            
+            Waiter waiter = waitQueue.poll();
+            if (waiter != null)
+            {
+                waiters.decrementAndGet();
+                if (waiter.accept(conn))
+                    return true;
+            }
+            
+            conn.setState(SQLConnection.STATE_IDLE);
+        }
+        
+        return false;
+    }
+    
+    /** 从池中移除一个使用中或预留的连接，空闲连接需先预留 */
+    public boolean remove(SQLConnection conn)
+    {
+        if (!conn.compareAndSetState(SQLConnection.STATE_ACTIVE, SQLConnection.STATE_REMOVED)
+            && !conn.compareAndSetState(SQLConnection.STATE_RESERVED, SQLConnection.STATE_REMOVED))
+            return false;
+        
+        removeStripe(conn);
+        return sharedList.remove(conn);
+    }
+    
+    /** 从所属的分片子池中移除 */
+    private void removeStripe(SQLConnection conn)
+    {
+        List<CopyOnWriteArrayList<SQLConnection>> s = stripes;
+        if (s != null && conn.getStripe() < s.size())
+            s.get(conn.getStripe()).remove(conn);
+    }
+    
+    /** 预留一个空闲连接，预留后借用者不会取到该连接，用于检查和销毁 */
+    public boolean reserve(SQLConnection conn)
+    {
+        return conn.compareAndSetState(SQLConnection.STATE_IDLE, SQLConnection.STATE_RESERVED);
+    }
+    
+    /** 取消预留，恢复为空闲，有等待者时直接移交 */
+    public void unreserve(SQLConnection conn)
+    {
+        if (conn.compareAndSetState(SQLConnection.STATE_RESERVED, SQLConnection.STATE_IDLE))
+            handoff(conn);
+    }
+    
+    /** 清空连接池，返回清空前的所有连接，连接状态均置为已移除 */
+    public List<SQLConnection> clear()
+    {
+        List<SQLConnection> list = new ArrayList<>(sharedList);
+        for (SQLConnection conn : list)
+        {
+            conn.setState(SQLConnection.STATE_REMOVED);
+            removeStripe(conn);
+            sharedList.remove(conn);
+        }
+        return list;
+    }
+    
+    /** 任取一个池内连接，不改变状态，用于读取连接的默认会话属性，没有连接时返回null */
+    public SQLConnection peek()
+    {
+        Iterator<SQLConnection> it = sharedList.iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+    
+    /** 获取池中所有连接的快照 */
+    public List<SQLConnection> values()
+    {
+        return new ArrayList<>(sharedList);
+    }
+    
+    /** 获取等待连接的借用者数，含异步借用者 */
+    public int getWaiters()
+    {
+        return Math.max(waiters.get(), 0);
+    }
+    
+    /** 获取池中连接数 */
+    public int size()
+    {
+        return sharedList.size();
+    }
+    
+    /** 等待者，同步借用线程和异步借用者在同一个先来先得队列中排队 */
+    private abstract static class Waiter
+    {
+        /**
+         * 接收移交的连接，连接状态已置为使用中
+         *
+         * @param conn  连接
+         * @return      =true表示已接收，=false表示已超时、取消或完成，连接需移交给下一个等待者
+         */
+        abstract boolean accept(SQLConnection conn);
+    }
+    
+    /** 同步等待者，借用线程在自己的等待者上阻塞，移交时CAS设置连接后唤醒 */
+    private static final class ThreadWaiter extends Waiter
+    {
+        private static final Object CANCELLED = new Object();
+        
+        private final Thread thread = Thread.currentThread();
+        private final AtomicReference<Object> slot = new AtomicReference<>(); // =null表示等待中，=连接表示已移交，=CANCELLED表示已取消
+        
+        boolean accept(SQLConnection conn)
+        {
+            if (!slot.compareAndSet(null, conn))
+                return false;
+            
+            LockSupport.unpark(thread);
+            return true;
+        }
+        
+        /** 获取移交的连接，=null表示还未移交 */
+        SQLConnection get()
+        {
+            Object value = slot.get();
+            return value instanceof SQLConnection ? (SQLConnection)value : null;
+        }
+        
+        /** 取消等待，取消前已移交连接时返回该连接 */
+        SQLConnection cancel()
+        {
+            if (slot.compareAndSet(null, CANCELLED))
+                return null;
+            
+            return get();
+        }
+    }
+    
+    /** 异步等待者，移交时完成异步借用结果 */
+    private static final class FutureWaiter extends Waiter
+    {
+        private final ConnectionFuture future;
+        
+        FutureWaiter(ConnectionFuture future)
+        {
+            this.future = future;
+        }
+        
+        boolean accept(SQLConnection conn)
+        {
+            return future.complete(conn);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.xiyuan.orm.datasource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 异步获取数据库连接回调接口，由移交连接的线程或超时线程调用，实现中不要执行耗时操作 <br>
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+public interface ConnectionCallback
+{
+    /**
+     * 获取到连接，使用完后需关闭连接归还到连接池
+     *
+     * @param conn          数据库连接
+     */
+    public void onConnection(Connection conn);
+    
+    /**
+     * 获取连接失败，如连接耗尽超时或连接池已关闭
+     *
+     * @param e             失败异常
+     */
+    public void onFailure(SQLException e);
+}
@@ -0,0 +1,149 @@
+package com.xiyuan.orm.datasource;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xiyuan.core.logging.Log;
+import org.xiyuan.core.logging.LogFactory;
+
+/**
+ * 数据库连接异步关闭器，物理连接的关闭移出借还路径和后台维护调度器，由关闭线程执行 <br><br>
+ * 1.提交关闭时立即标记连接已关闭，之后不会再借出或归还，物理连接由关闭线程关闭<br>
+ * 2.关闭前设置网络超时，网络已断开时关闭最多阻塞关闭超时时长，不会长时间占用关闭线程<br>
+ * 3.关闭线程数和队列有界，队列满或关闭器已停止时在调用线程关闭，起到反压作用<br>
+ * 4.关闭线程空闲60秒后退出，连接池关闭时等待已提交的关闭完成，最长等待关闭超时时长<br>
+ * 5.同时作为连接中止的执行器，驱动中止连接时的关闭任务也在关闭线程中执行<br>
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+final class ConnectionCloser implements Executor
+{
+    private static final Log log = LogFactory.getLog("database.log");
+    
+    private static final int THREADS = 2; // 关闭线程数
+    private static final int QUEUE_SIZE = 1024; // 等待关闭队列长度
+    
+    private final String id;
+    private final ThreadFactory factory;
+    private final AtomicLong closeCount; // 已关闭的连接数
+    private final AtomicLong slowCount; // 关闭超过关闭超时时长的连接数
+    private volatile ThreadPoolExecutor executor;
+    private volatile int closeTimeoutMs = 5000; // 关闭超时毫秒数，关闭前设置为网络超时，=0表示不设置
+    
+    public ConnectionCloser(String id, ThreadFactory factory)
+    {
+        this.id = id;
+        this.factory = factory;
+        this.closeCount = new AtomicLong(0);
+        this.slowCount = new AtomicLong(0);
+    }
+    
+    /** 开启关闭器，已开启时不处理 */
+    public synchronized void start()
+    {
+        if (executor != null && !executor.isShutdown())
+            return;
+        
+        executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), factory, new RejectedExecutionHandler()
+        {
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+            {// 队列满或已停止时在调用线程执行，不丢弃关闭任务
+                r.run();
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+    
+    /** 停止关闭器，等待已提交的关闭完成，超时后中断关闭线程 */
+    public synchronized void shutdown()
+    {
+        if (executor == null)
+            return;
+        
+        executor.shutdown();
+        try
+        {
+            if (!executor.awaitTermination(Math.max(closeTimeoutMs, 1000), TimeUnit.MILLISECONDS))
+            {
+                log.error("数据库[%s]关闭器等待关闭超时，剩余[%s]个连接未关闭", id, executor.getQueue().size());
+                executor.shutdownNow();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+    
+    /** 执行任务，未开启或已停止时在调用线程执行 */
+    public void execute(Runnable command)
+    {
+        ThreadPoolExecutor e = executor;
+        if (e == null)
+            command.run();
+        else
+            e.execute(command);
+    }
+    
+    /**
+     * 异步关闭连接，立即标记已关闭，物理连接由关闭线程关闭
+     *
+     * @param conn  数据库连接
+     */
+    public void close(final SQLConnection conn)
+    {
+        conn.retire();
+        execute(new Runnable()
+        {
+            public void run()
+            {
+                long startMs = System.currentTimeMillis();
+                conn.shutdown(ConnectionCloser.this, closeTimeoutMs);
+                closeCount.incrementAndGet();
+                
+                long elapsedMs = System.currentTimeMillis() - startMs;
+                if (closeTimeoutMs > 0 && elapsedMs >= closeTimeoutMs)
+                {
+                    slowCount.incrementAndGet();
+                    log.warn("数据库连接[%s][%s]关闭耗时[%s]毫秒，超过关闭超时时长", id, conn.getId(), elapsedMs);
+                }
+            }
+        });
+    }
+    
+    /***********************************/
+    // 参数信息
+    /***********************************/
+    
+    public int getPending()
+    {
+        ThreadPoolExecutor e = executor;
+        return e == null ? 0 : e.getQueue().size() + e.getActiveCount();
+    }
+    
+    public long getCloseCount()
+    {
+        return closeCount.get();
+    }
+    
+    public long getSlowCount()
+    {
+        return slowCount.get();
+    }
+    
+    public int getCloseTimeoutMs()
+    {
+        return closeTimeoutMs;
+    }
+    
+    public void setCloseTimeoutMs(int closeTimeoutMs)
+    {
+        this.closeTimeoutMs = Math.max(closeTimeoutMs, 0);
+    }
+}
@@ -0,0 +1,182 @@
+package com.xiyuan.orm.datasource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步获取数据库连接结果，连接池有连接归还或新建时直接移交完成 <br><br>
+ * 1.状态由CAS切换，先置为完成中再设置结果，保证完成后读到的连接或异常不为空，等待使用CountDownLatch，不使用synchronized，不会钉住虚拟线程的载体线程<br>
+ * 2.回调在完成的线程中执行，完成后再添加的回调立即在当前线程执行，每个回调只执行一次<br>
+ * 3.取消或超时后再移交过来的连接不会被接收，由连接池继续移交给其他等待者，取消时移出连接池的等待队列<br>
+ * 4.创建时记录请求线程和借用堆栈，在归还或新建连接的线程中完成时，连接的借用线程和泄漏检测报告的堆栈仍为请求方<br>
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+public final class ConnectionFuture implements Future<Connection>
+{
+    private static final int COMPLETING = -1;
+    private static final int PENDING = 0;
+    private static final int COMPLETED = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+    
+    private final SQLDataSource source;
+    private final long startNs;
+    private final Thread borrower; // 请求线程，完成时记为连接的借用线程
+    private final Throwable borrowTrace; // 请求时的借用堆栈，开启泄漏检测时按采样记录
+    private final AtomicInteger state;
+    private final CountDownLatch latch;
+    private final ConcurrentLinkedQueue<ConnectionCallback> callbacks;
+    
+    private volatile Connection conn; // 本次借用的句柄
+    private volatile SQLException error;
+    
+    ConnectionFuture(SQLDataSource source, long startNs)
+    {
+        this.source = source;
+        this.startNs = startNs;
+        this.borrower = Thread.currentThread();
+        this.borrowTrace = source.newBorrowTrace();
+        this.state = new AtomicInteger(PENDING);
+        this.latch = new CountDownLatch(1);
+        this.callbacks = new ConcurrentLinkedQueue<>();
+    }
+    
+    /**
+     * 移交一个连接完成，连接状态已由连接池CAS置为使用中
+     *
+     * @param conn  连接池连接
+     * @return      =true表示已接收，=false表示已完成、失败或取消，连接需由调用方恢复
+     */
+    boolean complete(SQLConnection conn)
+    {
+        if (!state.compareAndSet(PENDING, COMPLETING))
+            return false;
+        
+        this.conn = new ConnectionHandle(source.borrowed(conn, startNs, borrower, borrowTrace));
+        state.set(COMPLETED);
+        latch.countDown();
+        fireCallbacks();
+        return true;
+    }
+    
+    /**
+     * 获取失败
+     *
+     * @param e     失败异常
+     * @return      =true表示已设置失败，=false表示已完成
+     */
+    boolean fail(SQLException e)
+    {
+        if (!state.compareAndSet(PENDING, COMPLETING))
+            return false;
+        
+        this.error = e;
+        state.set(FAILED);
+        latch.countDown();
+        fireCallbacks();
+        return true;
+    }
+    
+    /**
+     * 增加回调，已完成时立即在当前线程执行
+     *
+     * @param callback  回调
+     * @return          当前对象，便于链式调用
+     */
+    public ConnectionFuture onComplete(ConnectionCallback callback)
+    {
+        callbacks.add(callback);
+        if (isDone())
+            fireCallbacks();
+        
+        return this;
+    }
+    
+    /** 执行未执行的回调，取出后执行保证每个回调只执行一次 */
+    private void fireCallbacks()
+    {
+        if (state.get() == CANCELLED)
+        {
+            callbacks.clear();
+            return;
+        }
+        
+        ConnectionCallback callback;
+        while ((callback = callbacks.poll()) != null)
+        {
+            try
+            {
+                if (state.get() == COMPLETED)
+                    callback.onConnection(conn);
+                else
+                    callback.onFailure(error);
+            }
+            catch (Throwable e)
+            {// 回调异常不影响连接池
+            }
+        }
+    }
+    
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning)
+    {
+        if (!state.compareAndSet(PENDING, CANCELLED))
+            return false;
+        
+        source.removeAsync(this);
+        latch.countDown();
+        callbacks.clear();
+        return true;
+    }
+    
+    @Override
+    public boolean isCancelled()
+    {
+        return state.get() == CANCELLED;
+    }
+    
+    @Override
+    public boolean isDone()
+    {
+        return state.get() > PENDING;
+    }
+    
+    @Override
+    public Connection get() throws InterruptedException, ExecutionException
+    {
+        latch.await();
+        return result();
+    }
+    
+    @Override
+    public Connection get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+    {
+        if (!latch.await(timeout, unit))
+            throw new TimeoutException("等待数据库连接超时");
+        
+        return result();
+    }
+    
+    /** 等待结束后获取结果，完成前状态已设置，latch保证连接和异常可见 */
+    private Connection result() throws ExecutionException
+    {
+        switch (state.get())
+        {
+        case COMPLETED:
+            return conn;
+        case FAILED:
+            throw new ExecutionException(error);
+        default:
+            throw new CancellationException("获取数据库连接已取消");
+        }
+    }
+}
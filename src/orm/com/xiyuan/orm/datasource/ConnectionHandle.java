@@ -0,0 +1,331 @@
+package com.xiyuan.orm.datasource;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 连接池连接的借用句柄，每次借用新建一个，业务拿到的是句柄而不是池内连接 <br><br>
+ * 1.关闭时CAS置为已关闭后才释放池内连接，同一次借用重复关闭不再释放，不会把已归还后又被其他线程借走的连接再次归还<br>
+ * 2.已关闭的句柄调用其他方法抛出连接已关闭异常，不会操作其他借用者的连接<br>
+ * 3.unwrap(SQLConnection.class)取得池内连接，用于读取连接编号等连接池信息<br>
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+final class ConnectionHandle implements Connection
+{
+    private static final AtomicIntegerFieldUpdater<ConnectionHandle> CLOSED_UPDATER = AtomicIntegerFieldUpdater.newUpdater(ConnectionHandle.class, "closed");
+    
+    private final SQLConnection conn;
+    private volatile int closed;
+    
+    ConnectionHandle(SQLConnection conn)
+    {
+        this.conn = conn;
+    }
+    
+    /** 获取池内连接，句柄已关闭时抛出异常 */
+    private SQLConnection open() throws SQLException
+    {
+        if (closed != 0)
+            throw new SQLException("数据库连接已关闭");
+        
+        return conn;
+    }
+    
+    public void close() throws SQLException
+    {
+        if (CLOSED_UPDATER.compareAndSet(this, 0, 1))
+            conn.close();
+    }
+    
+    public boolean isClosed() throws SQLException
+    {
+        return closed != 0 || conn.isClosed();
+    }
+    
+    public Statement createStatement() throws SQLException
+    {
+        return open().createStatement();
+    }
+    
+    public PreparedStatement prepareStatement(String sql) throws SQLException
+    {
+        return open().prepareStatement(sql);
+    }
+    
+    public CallableStatement prepareCall(String sql) throws SQLException
+    {
+        return open().prepareCall(sql);
+    }
+    
+    public String nativeSQL(String sql) throws SQLException
+    {
+        return open().nativeSQL(sql);
+    }
+    
+    public void setAutoCommit(boolean autoCommit) throws SQLException
+    {
+        open().setAutoCommit(autoCommit);
+    }
+    
+    public boolean getAutoCommit() throws SQLException
+    {
+        return open().getAutoCommit();
+    }
+    
+    public void commit() throws SQLException
+    {
+        open().commit();
+    }
+    
+    public void rollback() throws SQLException
+    {
+        open().rollback();
+    }
+    
+    public DatabaseMetaData getMetaData() throws SQLException
+    {
+        return open().getMetaData();
+    }
+    
+    public void setReadOnly(boolean readOnly) throws SQLException
+    {
+        open().setReadOnly(readOnly);
+    }
+    
+    public boolean isReadOnly() throws SQLException
+    {
+        return open().isReadOnly();
+    }
+    
+    public void setCatalog(String catalog) throws SQLException
+    {
+        open().setCatalog(catalog);
+    }
+    
+    public String getCatalog() throws SQLException
+    {
+        return open().getCatalog();
+    }
+    
+    public void setTransactionIsolation(int level) throws SQLException
+    {
+        open().setTransactionIsolation(level);
+    }
+    
+    public int getTransactionIsolation() throws SQLException
+    {
+        return open().getTransactionIsolation();
+    }
+    
+    public SQLWarning getWarnings() throws SQLException
+    {
+        return open().getWarnings();
+    }
+    
+    public void clearWarnings() throws SQLException
+    {
+        open().clearWarnings();
+    }
+    
+    public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException
+    {
+        return open().createStatement(resultSetType, resultSetConcurrency);
+    }
+    
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException
+    {
+        return open().prepareStatement(sql, resultSetType, resultSetConcurrency);
+    }
+    
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException
+    {
+        return open().prepareCall(sql, resultSetType, resultSetConcurrency);
+    }
+    
+    public Map<String, Class<?>> getTypeMap() throws SQLException
+    {
+        return open().getTypeMap();
+    }
+    
+    public void setTypeMap(Map<String, Class<?>> map) throws SQLException
+    {
+        open().setTypeMap(map);
+    }
+    
+    public void setHoldability(int holdability) throws SQLException
+    {
+        open().setHoldability(holdability);
+    }
+    
+    public int getHoldability() throws SQLException
+    {
+        return open().getHoldability();
+    }
+    
+    public Savepoint setSavepoint() throws SQLException
+    {
+        return open().setSavepoint();
+    }
+    
+    public Savepoint setSavepoint(String name) throws SQLException
+    {
+        return open().setSavepoint(name);
+    }
+    
+    public void rollback(Savepoint savepoint) throws SQLException
+    {
+        open().rollback(savepoint);
+    }
+    
+    public void releaseSavepoint(Savepoint savepoint) throws SQLException
+    {
+        open().releaseSavepoint(savepoint);
+    }
+    
+    public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException
+    {
+        return open().createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+    }
+    
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException
+    {
+        return open().prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+    }
+    
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException
+    {
+        return open().prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+    }
+    
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException
+    {
+        return open().prepareStatement(sql, autoGeneratedKeys);
+    }
+    
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException
+    {
+        return open().prepareStatement(sql, columnIndexes);
+    }
+    
+    public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException
+    {
+        return open().prepareStatement(sql, columnNames);
+    }
+    
+    public Clob createClob() throws SQLException
+    {
+        return open().createClob();
+    }
+    
+    public Blob createBlob() throws SQLException
+    {
+        return open().createBlob();
+    }
+    
+    public NClob createNClob() throws SQLException
+    {
+        return open().createNClob();
+    }
+    
+    public SQLXML createSQLXML() throws SQLException
+    {
+        return open().createSQLXML();
+    }
+    
+    public boolean isValid(int timeout) throws SQLException
+    {
+        return open().isValid(timeout);
+    }
+    
+    public String getClientInfo(String name) throws SQLException
+    {
+        return open().getClientInfo(name);
+    }
+    
+    public Properties getClientInfo() throws SQLException
+    {
+        return open().getClientInfo();
+    }
+    
+    public Array createArrayOf(String typeName, Object[] elements) throws SQLException
+    {
+        return open().createArrayOf(typeName, elements);
+    }
+    
+    public Struct createStruct(String typeName, Object[] attributes) throws SQLException
+    {
+        return open().createStruct(typeName, attributes);
+    }
+    
+    public void setSchema(String schema) throws SQLException
+    {
+        open().setSchema(schema);
+    }
+    
+    public String getSchema() throws SQLException
+    {
+        return open().getSchema();
+    }
+    
+    public void abort(Executor executor) throws SQLException
+    {
+        open().abort(executor);
+    }
+    
+    public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException
+    {
+        open().setNetworkTimeout(executor, milliseconds);
+    }
+    
+    public int getNetworkTimeout() throws SQLException
+    {
+        return open().getNetworkTimeout();
+    }
+    
+    public void setClientInfo(String name, String value) throws SQLClientInfoException
+    {
+        if (closed != 0)
+            throw new SQLClientInfoException("数据库连接已关闭", null);
+        
+        conn.setClientInfo(name, value);
+    }
+    
+    public void setClientInfo(Properties properties) throws SQLClientInfoException
+    {
+        if (closed != 0)
+            throw new SQLClientInfoException("数据库连接已关闭", null);
+        
+        conn.setClientInfo(properties);
+    }
+    
+    public <T> T unwrap(Class<T> iface) throws SQLException
+    {
+        if (iface.isInstance(conn))
+            return iface.cast(conn);
+        
+        return open().unwrap(iface);
+    }
+    
+    public boolean isWrapperFor(Class<?> iface) throws SQLException
+    {
+        return iface.isInstance(conn) || open().isWrapperFor(iface);
+    }
+}
@@ -1,8 +1,6 @@
 package com.xiyuan.orm.datasource;
 
 import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Collections;
 import java.util.HashSet;
@@ -25,6 +23,7 @@ public class ConnectionTester
     public final static int DATABASE_IS_INVALID      = -8;
     
     private final static Set<String> INVALID_DB_STATES;
+    private final static Set<String> FATAL_CONN_STATES;
     static
     {
         Set<String> temp = new HashSet<String>();
@@ -38,10 +37,15 @@ public class ConnectionTester
         temp.add("08S01"); //SQL State "Communication link failure"
     
         INVALID_DB_STATES = Collections.unmodifiableSet(temp);
+        
+        temp = new HashSet<String>();
+        temp.add("57P01"); //PostgreSQL "admin shutdown"
+        temp.add("57P02"); //PostgreSQL "crash shutdown"
+        temp.add("57P03"); //PostgreSQL "cannot connect now"
+        FATAL_CONN_STATES = Collections.unmodifiableSet(temp);
     }
 
     private SQLDataSource dataSource = null;
-    private SQLConnection testconnection = null;
     
     public ConnectionTester(SQLDataSource dataSource)
     {
@@ -49,39 +53,39 @@ public class ConnectionTester
     }
     
     /**
-     * 判断数据库是否断开
+     * 判断数据库是否断开，不再单独保持测试连接 <br><br>
+     * 1.优先预留连接池中的一个空闲连接检查，可用即表示正常，检查后归还，不可用的销毁<br>
+     * 2.没有空闲连接或空闲连接不可用时新建一个连接检查，可用时交给连接池，不可用表示断开<br>
      * 
      * @return boolean =true表示断开,=false表示正常
      */
     public boolean isDbBreak()
     {
-        if (testconnection == null)
+        SQLConnection conn = dataSource.reserveIdleConnection();
+        if (conn != null)
         {
-            testconnection = dataSource.newConnection("测试");
-            if (testconnection == null)
-                return true;
+            boolean isAvailable = isConnectionAvailable(conn) == CONNECTION_IS_OKAY;
+            dataSource.unreserveConnection(conn, isAvailable);
+            if (isAvailable)
+                return false;
         }
         
-        if (testconnection.isClosed() || testconnection.isKeepOrIdleTimeout())
-        {
-            testconnection.shutdown();
-            testconnection = null;
-            testconnection = dataSource.newConnection("测试");
-            if (testconnection == null)
-                return true;
-        }  
+        conn = dataSource.newConnection("测试");
+        if (conn == null)
+            return true;
         
-        int status = isConnectionAvailable(testconnection);
-        if (status == CONNECTION_IS_OKAY)
-            return false;
+        if (isConnectionAvailable(conn) != CONNECTION_IS_OKAY)
+        {
+            dataSource.closeConnection(conn);
+            return true;
+        }
         
-        testconnection.shutdown();
-        testconnection = null;
-        return true;
+        dataSource.offerConnection(conn);
+        return false;
     }
     
     /**
-     * 检查数据库连接
+     * 检查数据库连接，使用连接池配置的检查策略
      * 
      * @param connection 数据库连接
      * @return =0,正常,=-1,该连接异常,=-8,数据库异常
@@ -90,15 +94,14 @@ public class ConnectionTester
     {
         if (connection == null)
             return CONNECTION_IS_INVALID;
-            
-        ResultSet rst = null;
         
         try
         {
-            DatabaseMetaData metaData = connection.getMetaData();
-
-            rst = metaData.getTables(null, null, "PROBABLYNOT", new String[]{"TABLE"});
-            return CONNECTION_IS_OKAY;
+            if (dataSource.getValidator().isValid(connection, dataSource.getValidationTimeout()))
+                return CONNECTION_IS_OKAY;
+            
+            log.error("检查数据库连接是否可用时:连接不可用");
+            return CONNECTION_IS_INVALID;
         }
         catch (SQLException e)
         {
@@ -114,19 +117,32 @@ public class ConnectionTester
                 return CONNECTION_IS_INVALID; 
             }
         }
-        finally
+    }
+    
+    /**
+     * 判断执行时的异常是否表示连接已不可用，08开头的连接异常类和数据库关闭状态
+     *
+     * @param e     数据库异常
+     * @return      =true表示连接已不可用，应直接销毁
+     */
+    public static boolean isFatalException(SQLException e)
+    {
+        for (; e != null; e = e.getNextException())
         {
-            DBClose.close(rst);
+            String state = e.getSQLState();
+            if (state == null)
+                continue;
+            
+            if (state.startsWith("08") || INVALID_DB_STATES.contains(state) || FATAL_CONN_STATES.contains(state))
+                return true;
         }
+        
+        return false;
     }
     
-    /** 关闭测试连接 */
+    /** 关闭测试器，检查使用的是连接池中的连接，随连接池关闭，这里不需要再关闭，仅为兼容保留 */
+    @Deprecated
     public void shutdown()
     {
-        if (testconnection != null)
-        {
-            testconnection.shutdown();
-            testconnection = null;
-        }
     }
 }
@@ -0,0 +1,25 @@
+package com.xiyuan.orm.datasource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 数据库连接检查策略 <br><br>
+ * 1.ConnectionValidatorJdbc4，调用JDBC4的Connection.isValid(timeout)，由驱动实现检查方式<br>
+ * 2.ConnectionValidatorQuery，执行数据库策略提供的ping语句，如MySQL驱动对以ping注释开头的语句直接发送原生ping<br>
+ * 3.ConnectionValidatorMetaData，查询DatabaseMetaData.getTables，兼容不支持JDBC4的旧驱动<br>
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+public interface ConnectionValidator
+{
+    /**
+     * 检查数据库连接是否有效
+     *
+     * @param conn              物理数据库连接
+     * @param timeout           检查超时时长，单位:秒
+     * @return                  =true表示有效，=false表示无效
+     * @throws SQLException     检查时异常，由调用方根据SQLState区分连接异常和数据库异常
+     */
+    public boolean isValid(Connection conn, int timeout) throws SQLException;
+}
@@ -0,0 +1,33 @@
+package com.xiyuan.orm.datasource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+/**
+ * 数据库连接检查策略，调用JDBC4的Connection.isValid(timeout)，驱动不支持时降级为查询元数据
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+public class ConnectionValidatorJdbc4 implements ConnectionValidator
+{
+    private final ConnectionValidator fallback = new ConnectionValidatorMetaData();
+    private volatile boolean isSupported = true;
+    
+    @Override
+    public boolean isValid(Connection conn, int timeout) throws SQLException
+    {
+        if (!isSupported)
+            return fallback.isValid(conn, timeout);
+        
+        try
+        {
+            return conn.isValid(timeout);
+        }
+        catch (SQLFeatureNotSupportedException | AbstractMethodError e)
+        {// 旧驱动未实现JDBC4，记住后直接降级
+            isSupported = false;
+            return fallback.isValid(conn, timeout);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.xiyuan.orm.datasource;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 数据库连接检查策略，查询DatabaseMetaData.getTables，开销较大，仅用于兼容不支持JDBC4的旧驱动
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+public class ConnectionValidatorMetaData implements ConnectionValidator
+{
+    @Override
+    public boolean isValid(Connection conn, int timeout) throws SQLException
+    {
+        ResultSet rst = null;
+        
+        try
+        {
+            DatabaseMetaData metaData = conn.getMetaData();
+            rst = metaData.getTables(null, null, "PROBABLYNOT", new String[] { "TABLE" });
+            return true;
+        }
+        finally
+        {
+            DBClose.close(rst);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.xiyuan.orm.datasource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 数据库连接检查策略，执行ping语句，由数据库策略ORMPolicy.toPingSQL()提供<br>
+ * MySQL驱动对以ping注释开头的语句直接发送原生ping，不经过SQL解析
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+public class ConnectionValidatorQuery implements ConnectionValidator
+{
+    private final String sql;
+    
+    public ConnectionValidatorQuery(String sql)
+    {
+        this.sql = sql;
+    }
+    
+    @Override
+    public boolean isValid(Connection conn, int timeout) throws SQLException
+    {
+        Statement stmt = null;
+        
+        try
+        {
+            stmt = conn.createStatement();
+            if (timeout > 0)
+                stmt.setQueryTimeout(timeout);
+            
+            stmt.execute(sql);
+            return true;
+        }
+        finally
+        {
+            DBClose.close(stmt);
+        }
+    }
+    
+    public String getSql()
+    {
+        return sql;
+    }
+}
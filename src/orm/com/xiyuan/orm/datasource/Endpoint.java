@@ -0,0 +1,138 @@
+package com.xiyuan.orm.datasource;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 数据库连接节点，一个URL一个节点，记录创建连接的健康状况 <br><br>
+ * 1.创建成功记录耗时，按指数加权移动平均(EWMA)计算平均耗时，失败恢复后的第一次成功直接取本次耗时<br>
+ * 2.创建失败按失败耗时计入平均耗时，并按连续失败次数指数退避，1秒起最长60秒，退避期间不参与选择<br>
+ * 3.评分=平均耗时*(1+正在创建数)，越小越健康，正在创建的连接卡住时其他线程会避开该节点<br>
+ * 4.退避结束或超过探测间隔未使用的节点，由一个线程抢占探测，用于失败恢复后回切和刷新平均耗时<br>
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+final class Endpoint
+{
+    private static final double EWMA_ALPHA = 0.3; // 平均耗时的新样本权重
+    private static final long RETRY_MIN_MS = 1000; // 失败退避最短时长
+    private static final long RETRY_MAX_MS = 60 * 1000; // 失败退避最长时长
+    private static final long PROBE_INTERVAL_MS = 60 * 1000; // 未使用节点的探测间隔
+    
+    private final int index;
+    private final String url;
+    
+    private final AtomicLong latencyUs; // 平均耗时，单位微秒，=0表示还没有样本
+    private final AtomicInteger failures; // 连续失败次数
+    private final AtomicInteger connecting; // 正在创建的连接数
+    private final AtomicLong lastAttemptMs; // 最近一次尝试的时间，也用于抢占探测
+    private volatile long retryTimeMs; // 失败退避结束的时间
+    
+    public Endpoint(int index, String url)
+    {
+        this.index = index;
+        this.url = url;
+        this.latencyUs = new AtomicLong(0);
+        this.failures = new AtomicInteger(0);
+        this.connecting = new AtomicInteger(0);
+        this.lastAttemptMs = new AtomicLong(0);
+    }
+    
+    /** 判断是否在失败退避期内 */
+    public boolean isQuarantined(long nowMs)
+    {
+        return failures.get() > 0 && nowMs < retryTimeMs;
+    }
+    
+    /** 判断是否需要探测，失败退避已结束或长时间未使用，抢占成功的线程负责本次探测 */
+    public boolean claimProbe(long nowMs)
+    {
+        long last = lastAttemptMs.get();
+        if (failures.get() == 0 && nowMs - last < PROBE_INTERVAL_MS)
+            return false;
+        
+        if (failures.get() > 0 && last >= retryTimeMs)
+            return false;// 本次退避结束后已有线程在探测
+        
+        return lastAttemptMs.compareAndSet(last, nowMs);
+    }
+    
+    /** 获取评分，越小越健康 */
+    public long score()
+    {
+        return latencyUs.get() * (1 + connecting.get());
+    }
+    
+    /** 开始创建连接 */
+    public void connecting(long nowMs)
+    {
+        connecting.incrementAndGet();
+        lastAttemptMs.set(nowMs);
+    }
+    
+    /** 记录创建成功和耗时 */
+    public void recordSuccess(long elapsedUs)
+    {
+        connecting.decrementAndGet();
+        if (failures.getAndSet(0) > 0)
+        {// 失败恢复后直接取本次耗时，避免失败样本拖慢回切
+            latencyUs.set(Math.max(elapsedUs, 1));
+            return;
+        }
+        
+        record(elapsedUs);
+    }
+    
+    /** 记录创建失败和耗时，并开始退避 */
+    public void recordFailure(long elapsedUs, long nowMs)
+    {
+        connecting.decrementAndGet();
+        int count = failures.incrementAndGet();
+        retryTimeMs = nowMs + Math.min(RETRY_MIN_MS << Math.min(count - 1, 6), RETRY_MAX_MS);
+        record(elapsedUs);
+    }
+    
+    /** 计入平均耗时 */
+    private void record(long elapsedUs)
+    {
+        long sample = Math.max(elapsedUs, 1);
+        long cur;
+        long next;
+        do
+        {
+            cur = latencyUs.get();
+            next = cur == 0 ? sample : (long)(cur + (sample - cur) * EWMA_ALPHA);
+        }
+        while (!latencyUs.compareAndSet(cur, next));
+    }
+    
+    /***********************************/
+    // 参数信息
+    /***********************************/
+    
+    public int getIndex()
+    {
+        return index;
+    }
+    
+    public String getUrl()
+    {
+        return url;
+    }
+    
+    public long getRetryTimeMs()
+    {
+        return retryTimeMs;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return new StringBuilder("[")
+                .append("index:").append(index).append(",")
+                .append("latencyUs:").append(latencyUs.get()).append(",")
+                .append("failures:").append(failures.get()).append(",")
+                .append("connecting:").append(connecting.get()).append("]")
+                .toString();
+    }
+}
@@ -0,0 +1,135 @@
+package com.xiyuan.orm.datasource;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁耗时直方图，按2的幂分桶统计，记录时只有几次原子加，适合在借还连接等热点路径上使用 <br><br>
+ * 1.第i个桶统计[2^(i-1), 2^i)范围内的值，第0个桶统计0，单位由调用方决定，连接池统一为微秒<br>
+ * 2.百分位按桶上限估算，误差在2倍以内，用于判断数量级足够<br>
+ * 3.snapshot(true)取快照并清零，用于周期性统计<br>
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+public final class Histogram
+{
+    private static final int BUCKET_COUNT = 64;
+    
+    private final AtomicLongArray buckets;
+    private final AtomicLong count;
+    private final AtomicLong sum;
+    private final AtomicLong max;
+    
+    public Histogram()
+    {
+        this.buckets = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new AtomicLong(0);
+        this.sum = new AtomicLong(0);
+        this.max = new AtomicLong(0);
+    }
+    
+    /** 记录一个值，负数按0记录 */
+    public void record(long value)
+    {
+        if (value < 0)
+            value = 0;
+        
+        buckets.incrementAndGet(BUCKET_COUNT - Long.numberOfLeadingZeros(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        
+        long cur;
+        while (value > (cur = max.get()))
+        {
+            if (max.compareAndSet(cur, value))
+                break;
+        }
+    }
+    
+    /**
+     * 取快照
+     *
+     * @param reset 是否清零，清零时各计数逐个取出并置0，并发记录的值计入本次或下次快照，不会丢失
+     * @return      快照，快照不再变化
+     */
+    public Histogram snapshot(boolean reset)
+    {
+        Histogram snapshot = new Histogram();
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            snapshot.buckets.set(i, reset ? buckets.getAndSet(i, 0) : buckets.get(i));
+        }
+        
+        snapshot.count.set(reset ? count.getAndSet(0) : count.get());
+        snapshot.sum.set(reset ? sum.getAndSet(0) : sum.get());
+        snapshot.max.set(reset ? max.getAndSet(0) : max.get());
+        return snapshot;
+    }
+    
+    /** 获取记录数 */
+    public long getCount()
+    {
+        return count.get();
+    }
+    
+    /** 获取记录值总和 */
+    public long getSum()
+    {
+        return sum.get();
+    }
+    
+    /** 获取最大值 */
+    public long getMax()
+    {
+        return max.get();
+    }
+    
+    /** 获取平均值 */
+    public long getMean()
+    {
+        long c = count.get();
+        return c == 0 ? 0 : sum.get() / c;
+    }
+    
+    /**
+     * 获取百分位值，按所在桶的上限估算，不超过最大值
+     *
+     * @param percent   百分位，如50/95/99
+     * @return          百分位值
+     */
+    public long getPercentile(double percent)
+    {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            total += buckets.get(i);
+        }
+        
+        if (total == 0)
+            return 0;
+        
+        long rank = (long)Math.ceil(total * percent / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            seen += buckets.get(i);
+            if (seen >= rank)
+                return Math.min((1L << i) - 1, max.get());
+        }
+        
+        return max.get();
+    }
+    
+    @Override
+    public String toString()
+    {
+        return new StringBuilder("[")
+                .append("count:").append(getCount()).append(",")
+                .append("mean:").append(getMean()).append(",")
+                .append("p50:").append(getPercentile(50)).append(",")
+                .append("p95:").append(getPercentile(95)).append(",")
+                .append("p99:").append(getPercentile(99)).append(",")
+                .append("max:").append(getMax()).append("]")
+                .toString();
+    }
+}
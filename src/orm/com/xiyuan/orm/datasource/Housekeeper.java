@@ -0,0 +1,70 @@
+package com.xiyuan.orm.datasource;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 数据库连接池共享后台维护调度器，所有连接池共用一个调度线程池，替代每个连接池一个维护线程，连接池的监视线程仍保留 <br><br>
+ * 1.第一个连接池启动时创建，最后一个连接池关闭时销毁，按引用计数管理<br>
+ * 2.线程数为CPU核数的一半，最少2个最多8个，线程为守护线程<br>
+ * 3.周期任务首次执行时间在半个到一个周期内随机，避免所有连接池在同一时刻唤醒<br>
+ * 4.调度线程只做触发和内存中的检查，网络检查和创建连接由各连接池提交到自己的创建线程执行，慢数据库不占用调度线程<br>
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+final class Housekeeper
+{
+    private static final AtomicInteger sequence = new AtomicInteger(0);
+    private static ScheduledThreadPoolExecutor executor;
+    private static int references;
+    
+    /** 获取共享调度器，引用数+1，未创建时创建 */
+    static synchronized ScheduledThreadPoolExecutor acquire()
+    {
+        if (executor == null)
+        {
+            int threads = Math.max(2, Math.min(Runtime.getRuntime().availableProcessors() / 2, 8));
+            executor = new ScheduledThreadPoolExecutor(threads, new ThreadFactory()
+            {
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, "ZDataSource-housekeeper-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.setRemoveOnCancelPolicy(true);
+        }
+        
+        references++;
+        return executor;
+    }
+    
+    /** 释放共享调度器，引用数-1，没有引用时关闭 */
+    static synchronized void release()
+    {
+        if (references <= 0 || --references > 0)
+            return;
+        
+        executor.shutdownNow();
+        executor = null;
+    }
+    
+    /**
+     * 按固定延迟执行周期任务，首次执行时间在半个到一个周期内随机
+     *
+     * @param executor      调度器
+     * @param task          任务，需要自行捕捉异常，否则后续不再执行
+     * @param intervalMs    周期毫秒数
+     * @return              任务结果，用于取消
+     */
+    static ScheduledFuture<?> schedule(ScheduledThreadPoolExecutor executor, Runnable task, long intervalMs)
+    {
+        long initialDelayMs = ThreadLocalRandom.current().nextLong(intervalMs / 2, intervalMs + 1);
+        return executor.scheduleWithFixedDelay(task, initialDelayMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,618 @@
+package com.xiyuan.orm.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 数据库逻辑连接代理类，开启延迟绑定时getConnection()返回逻辑连接，按语句借用物理连接 <br><br>
+ * 1.获取逻辑连接时不借用物理连接，第一次创建语句时才从池里借用并绑定<br>
+ * 2.自动提交模式下，绑定期间创建的语句全部关闭后立即归还物理连接，下次创建语句时重新借用<br>
+ * 3.手动提交模式下，从绑定到commit()/rollback()为一个事务，事务期间保持绑定，事务结束且语句全部关闭后归还<br>
+ * 4.业务设置的会话属性(自动提交/只读/隔离级别/目录/结果集保持/模式)记录在逻辑连接上，每次绑定时重放，和默认值相同的由SQLConnection跳过不发送<br>
+ * 5.获取元数据、保存点、大对象和修改类型映射/客户端信息/网络超时等依赖物理连接的操作，绑定保持到逻辑连接关闭<br>
+ * 6.逻辑连接供单个业务线程使用，归还时物理连接按正常释放流程重置会话属性，未提交的事务回滚<br>
+ * 7.只在读写绑定状态时短暂加锁，借用等待、会话重放和物理连接上的调用都在锁外，调用期间计数，计数未归零时不归还<br>
+ * 8.语句返回的结果集和获取的元数据也被代理，getStatement()/getConnection()返回逻辑对象，不暴露物理语句和物理连接<br>
+ * 9.解除绑定时绑定次数+1，先关闭未关闭的物理语句再归还物理连接，之前的语句、结果集和元数据再调用时抛出已关闭异常<br>
+ * 10.未绑定时获取未设置过的会话属性，取连接池中连接的默认值直接返回，不借用物理连接，默认值未知时才借用<br>
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+final class LogicalConnection implements InvocationHandler
+{
+    private static final int SESSION_ATTRS = 6; // 重放的会话属性数，和SQLConnection.DIRTY_*前6位对应
+    private static final Set<String> STATEMENT_METHODS = new HashSet<>(Arrays.asList("createStatement", "prepareStatement", "prepareCall"));
+    private static final Set<String> PIN_METHODS = new HashSet<>(Arrays.asList("getMetaData", "setSavepoint", "releaseSavepoint",
+            "createBlob", "createClob", "createNClob", "createSQLXML", "createArrayOf", "createStruct",
+            "setTypeMap", "setClientInfo", "setNetworkTimeout", "unwrap"));
+    
+    private final SQLDataSource source;
+    private Connection proxy; // 逻辑连接代理，语句的getConnection()返回该代理
+    private SQLConnection bound; // 当前绑定的物理连接，=null表示未绑定
+    private volatile int epoch; // 绑定次数，解除绑定时+1，代理记录创建时的值，不一致表示已归还
+    private final List<LogicalStatement> statements = new ArrayList<>(); // 当前绑定期间未关闭的语句
+    private final List<LogicalStatement> detached = new ArrayList<>(); // 解除绑定时未关闭的语句，归还物理连接前关闭
+    private int calls; // 正在物理连接上执行的调用数，>0时不归还
+    private boolean txActive; // 手动提交模式下的事务是否未结束
+    private boolean pinned; // 是否保持绑定到逻辑连接关闭
+    private volatile boolean closed;
+    
+    private int sessionBits; // 业务设置过的会话属性
+    private int sessionVersion; // 会话属性修改次数，锁外重放期间被修改时重新借用
+    private final Method[] setters = new Method[SESSION_ATTRS]; // 会话属性的设置方法，绑定时重放
+    private final Object[] values = new Object[SESSION_ATTRS]; // 会话属性的设置值
+    
+    private LogicalConnection(SQLDataSource source)
+    {
+        this.source = source;
+    }
+    
+    /**
+     * 生成逻辑连接代理
+     *
+     * @param source    连接池
+     * @return          逻辑连接，未绑定物理连接
+     */
+    static Connection newProxy(SQLDataSource source)
+    {
+        LogicalConnection handler = new LogicalConnection(source);
+        handler.proxy = (Connection)Proxy.newProxyInstance(LogicalConnection.class.getClassLoader(), new Class<?>[] { Connection.class }, handler);
+        return handler.proxy;
+    }
+    
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+    {
+        String name = method.getName();
+        int argc = method.getParameterTypes().length;
+        if ("equals".equals(name) && argc == 1)
+            return proxy == args[0];
+        
+        if ("hashCode".equals(name) && argc == 0)
+            return System.identityHashCode(proxy);
+        
+        if ("toString".equals(name) && argc == 0)
+        {
+            SQLConnection conn = bound;
+            return "LogicalConnection[" + (conn == null ? "unbound" : conn.getId()) + "]";
+        }
+        
+        if ("close".equals(name) && argc == 0)
+        {
+            close();
+            return null;
+        }
+        
+        if ("isClosed".equals(name) && argc == 0)
+            return closed;
+        
+        if (closed)
+            throw new SQLException("连接已关闭");
+        
+        if ("abort".equals(name) && argc == 1)
+        {
+            abort((Executor)args[0]);
+            return null;
+        }
+        
+        // 1.会话属性，已绑定时同时设置到物理连接，并记录用于下次绑定时重放，已设置过的直接返回记录值
+        int bit = sessionBit(name, argc);
+        if (bit != 0)
+        {
+            if (argc == 1)
+            {
+                setSession(bit, method, args);
+                return null;
+            }
+            
+            synchronized (this)
+            {
+                if ((sessionBits & bit) != 0)
+                    return values[Integer.numberOfTrailingZeros(bit)];
+                
+                if (bound == null)
+                {// 未绑定时取默认值，借用时物理连接已重置为默认值
+                    Object value = source.getSessionDefault(bit);
+                    if (value != null)
+                        return value;
+                }
+            }
+        }
+        
+        // 2.事务结束，未绑定时没有事务，不需要处理
+        if (("commit".equals(name) || "rollback".equals(name)) && argc == 0)
+        {
+            endTransaction(method);
+            return null;
+        }
+        
+        // 3.创建语句，绑定物理连接，语句关闭时检查是否可以归还
+        SQLConnection conn = acquire();
+        try
+        {
+            Object result = call(conn, method, args);
+            if (STATEMENT_METHODS.contains(name))
+                return newStatement((Statement)result, method.getReturnType(), conn);
+            
+            if (PIN_METHODS.contains(name))
+            {
+                synchronized (this)
+                {
+                    pinned = true;
+                }
+            }
+            
+            if (result instanceof DatabaseMetaData)
+                return newMetaData((DatabaseMetaData)result, epoch);
+            
+            return result;
+        }
+        finally
+        {
+            release();
+        }
+    }
+    
+    /**
+     * 获取绑定的物理连接并计数，未绑定时在锁外借用并重放会话属性后再绑定<br>
+     * 借用期间其他线程已绑定时归还新借的使用已绑定的，会话属性被修改时重新借用，逻辑连接已关闭时归还并抛出异常
+     *
+     * @return              绑定的物理连接，用完后调用release()
+     * @throws Throwable    借用或重放失败，逻辑连接已关闭
+     */
+    private SQLConnection acquire() throws Throwable
+    {
+        for (;;)
+        {
+            int bits, version;
+            Method[] replaySetters;
+            Object[] replayValues;
+            synchronized (this)
+            {
+                if (closed)
+                    throw new SQLException("连接已关闭");
+                
+                if (bound != null)
+                {
+                    calls++;
+                    return bound;
+                }
+                
+                bits = sessionBits;
+                version = sessionVersion;
+                replaySetters = setters.clone();
+                replayValues = values.clone();
+            }
+            
+            SQLConnection conn = source.borrowConnection();
+            boolean autoCommit;
+            try
+            {
+                for (int i = 0; i < SESSION_ATTRS; i++)
+                {
+                    if ((bits & (1 << i)) != 0)
+                        call(conn, replaySetters[i], new Object[] { replayValues[i] });
+                }
+                
+                autoCommit = conn.getAutoCommit();
+            }
+            catch (Throwable e)
+            {// 重放失败时归还，释放时重置已设置的会话属性
+                conn.close();
+                throw e;
+            }
+            
+            synchronized (this)
+            {
+                if (!closed && bound == null && version == sessionVersion)
+                {
+                    bound = conn;
+                    txActive = !autoCommit;
+                    calls++;
+                    return conn;
+                }
+            }
+            
+            // 借用期间已关闭、已被其他线程绑定或会话属性已修改，归还后重新判断
+            conn.close();
+        }
+    }
+    
+    /** 物理连接上的调用结束，计数归零且可以归还时归还 */
+    private void release() throws SQLException
+    {
+        SQLConnection idle;
+        synchronized (this)
+        {
+            calls--;
+            idle = takeIfIdle();
+        }
+        
+        if (idle != null)
+            giveBack(idle);
+    }
+    
+    /** 设置会话属性，已绑定时先设置到物理连接，成功后再记录，切换到自动提交时驱动已提交当前事务 */
+    private void setSession(int bit, Method method, Object[] args) throws Throwable
+    {
+        SQLConnection conn;
+        synchronized (this)
+        {
+            if (bound == null)
+            {
+                record(bit, method, args[0]);
+                return;
+            }
+            
+            conn = bound;
+            calls++;
+        }
+        
+        try
+        {
+            call(conn, method, args);
+            synchronized (this)
+            {
+                record(bit, method, args[0]);
+                if (bit == SQLConnection.DIRTY_AUTOCOMMIT)
+                    txActive = !(Boolean)args[0];
+            }
+        }
+        finally
+        {
+            release();
+        }
+    }
+    
+    /** 记录会话属性用于下次绑定时重放，持有锁时调用 */
+    private void record(int bit, Method method, Object value)
+    {
+        int ind = Integer.numberOfTrailingZeros(bit);
+        sessionBits |= bit;
+        sessionVersion++;
+        setters[ind] = method;
+        values[ind] = value;
+    }
+    
+    /** 提交或回滚事务，未绑定时没有事务不处理，结束后语句全部关闭时归还 */
+    private void endTransaction(Method method) throws Throwable
+    {
+        SQLConnection conn;
+        synchronized (this)
+        {
+            if (bound == null)
+                return;
+            
+            conn = bound;
+            calls++;
+        }
+        
+        try
+        {
+            call(conn, method, null);
+            synchronized (this)
+            {
+                txActive = false;
+            }
+        }
+        finally
+        {
+            release();
+        }
+    }
+    
+    /** 解除绑定，返回原绑定的物理连接，未关闭的语句移到待关闭列表，持有锁时调用 */
+    private SQLConnection unbind()
+    {
+        SQLConnection conn = bound;
+        bound = null;
+        epoch++;
+        detached.addAll(statements);
+        statements.clear();
+        txActive = false;
+        return conn;
+    }
+    
+    /** 取出待关闭的语句，持有锁时调用 */
+    private LogicalStatement[] takeDetached()
+    {
+        LogicalStatement[] stmts = detached.toArray(new LogicalStatement[detached.size()]);
+        detached.clear();
+        return stmts;
+    }
+    
+    /** 归还解除绑定的物理连接，先关闭未关闭的物理语句，归还后语句缓存不会再被这些语句使用 */
+    private void giveBack(SQLConnection conn) throws SQLException
+    {
+        LogicalStatement[] stmts;
+        synchronized (this)
+        {
+            stmts = takeDetached();
+        }
+        
+        for (LogicalStatement stmt : stmts)
+        {
+            stmt.detach(true);
+        }
+        conn.close();
+    }
+    
+    /** 没有进行中的调用，且已关闭或语句全部关闭、事务已结束且未保持绑定时解除绑定，返回需归还的物理连接，持有锁时调用 */
+    private SQLConnection takeIfIdle()
+    {
+        if (bound == null || calls > 0)
+            return null;
+        
+        if (!closed && (!statements.isEmpty() || txActive || pinned))
+            return null;
+        
+        return unbind();
+    }
+    
+    /** 关闭逻辑连接，已绑定且没有进行中的调用时归还物理连接，否则调用结束时归还，未提交的事务在释放时回滚 */
+    private void close() throws SQLException
+    {
+        SQLConnection idle;
+        synchronized (this)
+        {
+            if (closed)
+                return;
+            
+            closed = true;
+            pinned = false;
+            idle = takeIfIdle();
+        }
+        
+        if (idle != null)
+            giveBack(idle);
+    }
+    
+    /** 中止逻辑连接，已绑定时中止物理连接，进行中的调用由物理连接中止后失败 */
+    private void abort(Executor executor) throws SQLException
+    {
+        SQLConnection conn;
+        LogicalStatement[] stmts;
+        synchronized (this)
+        {
+            closed = true;
+            conn = bound == null ? null : unbind();
+            stmts = takeDetached();
+        }
+        
+        for (LogicalStatement stmt : stmts)
+        {// 物理语句随物理连接中止
+            stmt.detach(false);
+        }
+        
+        if (conn != null)
+            conn.abort(executor);
+    }
+    
+    /** 语句关闭，绑定期间的语句全部关闭时检查是否可以归还，已解除绑定的不再处理 */
+    private void statementClosed(LogicalStatement stmt) throws SQLException
+    {
+        SQLConnection idle;
+        synchronized (this)
+        {
+            if (!statements.remove(stmt))
+                return;
+            
+            idle = takeIfIdle();
+        }
+        
+        if (idle != null)
+            giveBack(idle);
+    }
+    
+    /** 生成逻辑语句代理，登记到当前绑定，借用期间已被中止解除绑定时直接置为已关闭 */
+    private Object newStatement(Statement stmt, Class<?> iface, SQLConnection owner)
+    {
+        LogicalStatement handler = new LogicalStatement(stmt);
+        synchronized (this)
+        {
+            if (bound == owner)
+                statements.add(handler);
+            else
+                handler.detach(false);
+        }
+        
+        return Proxy.newProxyInstance(LogicalConnection.class.getClassLoader(), new Class<?>[] { iface }, handler);
+    }
+    
+    /** 检查代理创建时的绑定是否已解除，已解除时物理对象已随物理连接归还，抛出已关闭异常 */
+    private void checkEpoch(int created, String desc) throws SQLException
+    {
+        if (epoch != created)
+            throw new SQLException(desc + "已关闭");
+    }
+    
+    /**
+     * 逻辑语句，关闭时通知逻辑连接，getConnection()返回逻辑连接，返回的结果集getStatement()返回逻辑语句<br>
+     * 业务关闭和解除绑定时关闭由CAS保证物理语句只关闭一次，解除绑定后再调用抛出语句已关闭异常
+     */
+    private final class LogicalStatement implements InvocationHandler
+    {
+        private final Statement stmt;
+        private final int created; // 创建时的绑定次数
+        private final AtomicBoolean stmtClosed = new AtomicBoolean(false);
+        
+        LogicalStatement(Statement stmt)
+        {
+            this.stmt = stmt;
+            this.created = epoch;
+        }
+        
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            String name = method.getName();
+            int argc = method.getParameterTypes().length;
+            if ("getConnection".equals(name) && argc == 0)
+                return LogicalConnection.this.proxy;
+            
+            if ("equals".equals(name) && argc == 1)
+                return proxy == args[0];
+            
+            if ("hashCode".equals(name) && argc == 0)
+                return System.identityHashCode(proxy);
+            
+            if ("close".equals(name) && argc == 0)
+            {
+                if (!stmtClosed.compareAndSet(false, true))
+                    return null;
+                
+                try
+                {
+                    stmt.close();
+                }
+                finally
+                {
+                    statementClosed(this);
+                }
+                return null;
+            }
+            
+            if ("isClosed".equals(name) && argc == 0 && (stmtClosed.get() || epoch != created))
+                return true;
+            
+            if (stmtClosed.get())
+                throw new SQLException("语句已关闭");
+            
+            checkEpoch(created, "语句");
+            Object result = call(stmt, method, args);
+            return result instanceof ResultSet ? newResultSet((ResultSet)result, proxy, created) : result;
+        }
+        
+        /** 解除绑定时关闭，业务已关闭的不再关闭，物理连接中止时不关闭物理语句 */
+        void detach(boolean closeStmt)
+        {
+            if (!stmtClosed.compareAndSet(false, true) || !closeStmt)
+                return;
+            
+            try
+            {
+                stmt.close();
+            }
+            catch (SQLException e)
+            {// 物理连接随后按正常释放流程检查
+            }
+        }
+    }
+    
+    /** 生成元数据代理，getConnection()返回逻辑连接，返回的结果集不暴露物理语句，解除绑定后再调用抛出连接已关闭异常 */
+    private DatabaseMetaData newMetaData(final DatabaseMetaData meta, final int created)
+    {
+        return (DatabaseMetaData)Proxy.newProxyInstance(LogicalConnection.class.getClassLoader(), new Class<?>[] { DatabaseMetaData.class }, new InvocationHandler()
+        {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                String name = method.getName();
+                int argc = method.getParameterTypes().length;
+                if ("getConnection".equals(name) && argc == 0)
+                    return LogicalConnection.this.proxy;
+                
+                if ("equals".equals(name) && argc == 1)
+                    return proxy == args[0];
+                
+                if ("hashCode".equals(name) && argc == 0)
+                    return System.identityHashCode(proxy);
+                
+                checkEpoch(created, "连接");
+                Object result = call(meta, method, args);
+                return result instanceof ResultSet ? newResultSet((ResultSet)result, null, created) : result;
+            }
+        });
+    }
+    
+    /** 生成结果集代理，getStatement()返回逻辑语句，元数据生成的结果集返回null，解除绑定后再调用抛出结果集已关闭异常 */
+    private ResultSet newResultSet(final ResultSet rs, final Object stmt, final int created)
+    {
+        return (ResultSet)Proxy.newProxyInstance(LogicalConnection.class.getClassLoader(), new Class<?>[] { ResultSet.class }, new InvocationHandler()
+        {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                String name = method.getName();
+                int argc = method.getParameterTypes().length;
+                if ("getStatement".equals(name) && argc == 0)
+                    return stmt;
+                
+                if ("equals".equals(name) && argc == 1)
+                    return proxy == args[0];
+                
+                if ("hashCode".equals(name) && argc == 0)
+                    return System.identityHashCode(proxy);
+                
+                if (epoch != created)
+                {// 物理结果集已随物理语句关闭
+                    if ("close".equals(name) && argc == 0)
+                        return null;
+                    
+                    if ("isClosed".equals(name) && argc == 0)
+                        return true;
+                    
+                    throw new SQLException("结果集已关闭");
+                }
+                
+                return call(rs, method, args);
+            }
+        });
+    }
+    
+    /** 会话属性的设置/获取方法对应的SQLConnection.DIRTY_*位，不是会话属性返回0 */
+    private static int sessionBit(String name, int argc)
+    {
+        String attr;
+        if (name.startsWith("set") && argc == 1)
+            attr = name.substring(3);
+        else if (name.startsWith("get") && argc == 0)
+            attr = name.substring(3);
+        else if (name.startsWith("is") && argc == 0)
+            attr = name.substring(2);
+        else
+            return 0;
+        
+        switch (attr)
+        {
+            case "AutoCommit":
+                return SQLConnection.DIRTY_AUTOCOMMIT;
+            case "ReadOnly":
+                return SQLConnection.DIRTY_READONLY;
+            case "TransactionIsolation":
+                return SQLConnection.DIRTY_ISOLATION;
+            case "Catalog":
+                return SQLConnection.DIRTY_CATALOG;
+            case "Holdability":
+                return SQLConnection.DIRTY_HOLDABILITY;
+            case "Schema":
+                return SQLConnection.DIRTY_SCHEMA;
+            default:
+                return 0;
+        }
+    }
+    
+    /** 反射调用，抛出原始异常 */
+    private static Object call(Object target, Method method, Object[] args) throws Throwable
+    {
+        try
+        {
+            return method.invoke(target, args);
+        }
+        catch (InvocationTargetException e)
+        {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.xiyuan.orm.datasource;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 数据库连接池统计指标，计数器和直方图均为无锁实现 <br><br>
+ * 1.borrowWait为获取连接等待时长，hold为连接借出到归还的占用时长，create为创建物理连接时长，validate为检查连接时长，单位均为微秒<br>
+ * 2.timeouts为获取连接超时数，creations/createFailures为创建物理连接成功/失败数（含测试连接），destructions为移出连接池销毁的连接数<br>
+ * 3.snapshot(true)取快照并清零，可由监视线程或外部定时调用得到每个周期的指标<br>
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+public final class PoolMetrics
+{
+    private final Histogram borrowWait;
+    private final Histogram hold;
+    private final Histogram create;
+    private final Histogram validate;
+    
+    private final AtomicLong timeouts;
+    private final AtomicLong creations;
+    private final AtomicLong createFailures;
+    private final AtomicLong destructions;
+    
+    public PoolMetrics()
+    {
+        this(new Histogram(), new Histogram(), new Histogram(), new Histogram(), 0, 0, 0, 0);
+    }
+    
+    private PoolMetrics(Histogram borrowWait, Histogram hold, Histogram create, Histogram validate, long timeouts, long creations, long createFailures, long destructions)
+    {
+        this.borrowWait = borrowWait;
+        this.hold = hold;
+        this.create = create;
+        this.validate = validate;
+        this.timeouts = new AtomicLong(timeouts);
+        this.creations = new AtomicLong(creations);
+        this.createFailures = new AtomicLong(createFailures);
+        this.destructions = new AtomicLong(destructions);
+    }
+    
+    /**
+     * 取快照
+     *
+     * @param reset 是否清零
+     * @return      快照，快照不再变化
+     */
+    public PoolMetrics snapshot(boolean reset)
+    {
+        return new PoolMetrics(borrowWait.snapshot(reset), hold.snapshot(reset), create.snapshot(reset), validate.snapshot(reset),
+                reset ? timeouts.getAndSet(0) : timeouts.get(),
+                reset ? creations.getAndSet(0) : creations.get(),
+                reset ? createFailures.getAndSet(0) : createFailures.get(),
+                reset ? destructions.getAndSet(0) : destructions.get());
+    }
+    
+    /***********************************/
+    // 记录指标，连接池内部调用
+    /***********************************/
+    
+    /** 记录获取连接等待时长 */
+    void recordBorrowWait(long nanos)
+    {
+        borrowWait.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+    
+    /** 记录连接占用时长 */
+    void recordHold(long millis)
+    {
+        hold.record(TimeUnit.MILLISECONDS.toMicros(millis));
+    }
+    
+    /** 记录创建物理连接时长和结果 */
+    void recordCreate(long nanos, boolean success)
+    {
+        create.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+        if (success)
+            creations.incrementAndGet();
+        else
+            createFailures.incrementAndGet();
+    }
+    
+    /** 记录检查连接时长 */
+    void recordValidate(long nanos)
+    {
+        validate.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+    
+    /** 记录获取连接超时 */
+    void recordTimeout()
+    {
+        timeouts.incrementAndGet();
+    }
+    
+    /** 记录销毁连接 */
+    void recordDestruction()
+    {
+        destructions.incrementAndGet();
+    }
+    
+    /***********************************/
+    // 获取指标
+    /***********************************/
+    
+    public Histogram getBorrowWait()
+    {
+        return borrowWait;
+    }
+    
+    public Histogram getHold()
+    {
+        return hold;
+    }
+    
+    public Histogram getCreate()
+    {
+        return create;
+    }
+    
+    public Histogram getValidate()
+    {
+        return validate;
+    }
+    
+    public long getTimeouts()
+    {
+        return timeouts.get();
+    }
+    
+    public long getCreations()
+    {
+        return creations.get();
+    }
+    
+    public long getCreateFailures()
+    {
+        return createFailures.get();
+    }
+    
+    public long getDestructions()
+    {
+        return destructions.get();
+    }
+    
+    @Override
+    public String toString()
+    {
+        return new StringBuilder("[")
+                .append("wait:").append(borrowWait).append(",")
+                .append("hold:").append(hold).append(",")
+                .append("create:").append(create).append(",")
+                .append("validate:").append(validate).append(",")
+                .append("timeouts:").append(getTimeouts()).append(",")
+                .append("creations:").append(getCreations()).append(",")
+                .append("createFailures:").append(getCreateFailures()).append(",")
+                .append("destructions:").append(getDestructions()).append("]")
+                .toString();
+    }
+}
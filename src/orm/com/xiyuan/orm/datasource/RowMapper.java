@@ -0,0 +1,21 @@
+package com.xiyuan.orm.datasource;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 结果集行映射接口，跨分片查询时由各分片的执行线程调用，把当前行转换为结果对象 <br>
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+public interface RowMapper<T>
+{
+    /**
+     * 映射当前行，不要移动结果集游标
+     *
+     * @param rst           结果集，已定位到当前行
+     * @return              结果对象
+     * @throws SQLException 数据库异常
+     */
+    public T map(ResultSet rst) throws SQLException;
+}
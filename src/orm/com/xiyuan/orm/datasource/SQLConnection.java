@@ -8,17 +8,24 @@ import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.NClob;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLClientInfoException;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
 import java.sql.SQLWarning;
 import java.sql.SQLXML;
 import java.sql.Savepoint;
 import java.sql.Statement;
 import java.sql.Struct;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import org.xiyuan.core.logging.Log;
+import org.xiyuan.core.logging.LogFactory;
 
 /**
  * 数据库连接类，对Connection进行封装，增加对是否空闲，空闲时长和处理数等字段，以及close释放到连接池中 <br><br>
@@ -26,24 +33,90 @@ import java.util.concurrent.Executor;
  * 2.isIdle,idleTime,completedCount表示空闲时数据以及处理数<br>
  * 3.close()为提供业务关闭时释放连接<br>
  * 4.shutdown()为连接池关闭连接<br>
- * 5.isConnectionAvailable()检查数据库连接有效性<br>
+ * 5.isConnectionAvailable()检查数据库连接有效性，validate()不跳过直接检查，用于后台检查<br>
  * 6.isExcessTimeOrNum()检查是否超出空闲时长和处理数<br>
+ * 7.创建的语句被代理，执行时出现致命SQLState则标记连接已损坏，释放时直接销毁不再检查<br>
+ * 8.每个连接的最大保持时长在[最大保持时长*(1-抖动百分比),最大保持时长]内随机，避免同时创建的连接同时到期重建<br>
+ * 9.开启语句缓存时，PreparedStatement/CallableStatement关闭后放回本连接的语句缓存，下次相同SQL直接复用<br>
+ * 10.开启后台检查时，空闲连接由连接池后台线程检查并记录检查时间，获取时检查时间未过期的直接信任不再检查<br>
+ * 11.借用时记录借用线程，开启泄漏检测时按采样记录借用堆栈，占用超时由连接池后台线程告警或回收<br>
+ * 12.创建时读取会话属性(自动提交/只读/隔离级别/目录/结果集保持/模式/网络超时)作为默认值，设置时值未变化的不再发送到数据库，归还时只重置借用者改过的属性<br>
+ * 13.语句执行时记录正在执行的语句和开始时间，超过硬上限时由连接池后台线程取消语句，取消无效时中止连接<br>
+ * 14.连接池销毁连接时先标记已关闭，物理连接由关闭器异步关闭，关闭前设置网络超时，避免网络断开时关闭长时间阻塞<br>
  * 采用LRU(Least Recently Used)算法对连接进行管理，即每次提供的缓存连接都是最近的，那么最远的就会超出最大空闲了。
  *
  * @version v1.0.0 @author lgz 2016-3-21 新建与整理
  */
 public class SQLConnection implements Connection
 {
+    static final int STATE_IDLE = 0;       // 空闲
+    static final int STATE_ACTIVE = 1;     // 使用中
+    static final int STATE_REMOVED = -1;   // 已移出连接池
+    static final int STATE_RESERVED = -2;  // 已预留，用于检查和销毁
+    
+    static final int DIRTY_AUTOCOMMIT = 1;     // 自动提交已修改
+    static final int DIRTY_READONLY = 2;       // 只读已修改
+    static final int DIRTY_ISOLATION = 4;      // 事务隔离级别已修改
+    static final int DIRTY_CATALOG = 8;        // 目录已修改
+    static final int DIRTY_HOLDABILITY = 16;   // 结果集保持已修改
+    static final int DIRTY_SCHEMA = 32;        // 模式已修改
+    private static final int DIRTY_NETWORK_TIMEOUT = 64; // 网络超时已修改
+    
+    /** 同步执行器，设置网络超时时驱动要求传入执行器，直接在当前线程执行 */
+    private static final Executor SYNC_EXECUTOR = new Executor()
+    {
+        public void execute(Runnable command)
+        {
+            command.run();
+        }
+    };
+    
+    private static final Log log = LogFactory.getLog("database.log");
+    private static final AtomicIntegerFieldUpdater<SQLConnection> STATE_UPDATER = AtomicIntegerFieldUpdater.newUpdater(SQLConnection.class, "state");
+    private static final AtomicReferenceFieldUpdater<SQLConnection, Thread> BORROWER_UPDATER = AtomicReferenceFieldUpdater.newUpdater(SQLConnection.class, Thread.class, "borrowThread");
+    
     private SQLDataSource source;
     private Connection conn;
     private String connId;
     private long keepTimeMs;
+    private final StatementCache stmtCache; // 语句缓存，=null表示未开启
+    private final double keepJitter; // 保持时长抖动系数[0,1)，乘以连接池配置的抖动百分比得到本连接提前到期的比例
     
+    // 会话属性，当前值和默认值，只由借用线程修改，创建时读取失败的属性记入unknownBits，设置时总是发送，归还时无法重置，连接销毁
     private volatile boolean autoCommit;
+    private boolean readOnly;
+    private int isolation;
+    private String catalog;
+    private int holdability;
+    private String schema;
+    private int networkTimeout;
+    private boolean defAutoCommit;
+    private boolean defReadOnly;
+    private int defIsolation;
+    private String defCatalog;
+    private int defHoldability;
+    private String defSchema;
+    private int defNetworkTimeout;
+    private int dirtyBits; // 借用者修改过的会话属性
+    private int unknownBits; // 未知当前值的会话属性
+    
     private volatile boolean closed;
+    private volatile boolean broken;
+    private volatile boolean evicted;
     
-    private volatile boolean idle;
+    private volatile int state;
+    private volatile int stripe; // 所属分片子池，未分片时为0
     private volatile long idleTimeMs;
+    private volatile long activeTimeMs;
+    private volatile long verifiedTimeMs;
+    
+    private volatile Thread borrowThread; // 借用线程，=null表示未借出
+    private volatile Throwable borrowTrace; // 借用堆栈，开启泄漏检测时按采样记录
+    private volatile boolean leakReported; // 本次借用是否已报告泄漏
+    
+    private volatile Statement execStmt; // 正在执行的语句，=null表示没有执行
+    private volatile long execStartMs; // 正在执行的语句开始时间
+    private volatile boolean execCancelled; // 正在执行的语句是否已被后台线程取消
     
     public SQLConnection(SQLDataSource source, Connection conn)
     {
@@ -51,18 +124,14 @@ public class SQLConnection implements Connection
         this.conn = conn;
         this.connId = source.nextSequence();
         this.keepTimeMs = System.currentTimeMillis();
+        this.keepJitter = ThreadLocalRandom.current().nextDouble();
+        this.stmtCache = source.getStmtCacheSize() > 0 ? new StatementCache(source, source.getStmtCacheSize()) : null;
         
-        try
-        {
-            this.autoCommit = conn.getAutoCommit();
-        }
-        catch (SQLException e)
-        {
-            this.autoCommit = true;
-        }
+        readSession();
         
-        this.idle = true;
+        this.state = STATE_IDLE;
         this.idleTimeMs = keepTimeMs;
+        this.verifiedTimeMs = keepTimeMs;
     }
     
     /** 当前连接编号 */
@@ -74,40 +143,119 @@ public class SQLConnection implements Connection
     /** 当前连接是否空闲 */
     public boolean isIdle()
     {
-        return !closed && idle;
+        return !closed && state == STATE_IDLE;
     }
     
     /** 当前线程是否运行 */
     public boolean isActive()
     {
-        return !idle;
+        return state == STATE_ACTIVE;
     }
     
-    /** 设置连接为运行中 */
-    public SQLConnection active()
+    /**
+     * 设置连接为运行中，连接状态已由连接池CAS置为使用中
+     *
+     * @param borrower      借用线程，异步借用时为请求线程
+     * @param borrowTrace   借用堆栈，=null表示本次未采样
+     * @return              当前连接
+     */
+    SQLConnection active(Thread borrower, Throwable borrowTrace)
     {
-        idle = false;
+        activeTimeMs = System.currentTimeMillis();
+        this.borrowTrace = borrowTrace;
+        leakReported = false;
+        borrowThread = borrower;
         source.active();
         return this;
     }
     
-    /** 设置连接为空闲中 */
-    public void idle()
+    /**
+     * 设置连接为空闲中，连接状态由连接池归还时置为空闲，同一次借用只计一次，泄漏回收和业务释放并发时不重复减活跃数
+     *
+     * @return  =true表示本次结束了借用，=false表示未借出或本次借用已结束
+     */
+    public boolean idle()
     {
-        idle = true;
         idleTimeMs = System.currentTimeMillis();
-        source.idle();
+        
+        Thread thread = borrowThread;
+        if (thread == null || !BORROWER_UPDATER.compareAndSet(this, thread, null))
+            return false;
+        
+        borrowTrace = null;
+        source.idle(idleTimeMs - activeTimeMs);
+        return true;
+    }
+    
+    /**
+     * 获取会话属性的默认值，用于逻辑连接未绑定时直接回答，不发送到数据库
+     *
+     * @param bit   会话属性，DIRTY_*
+     * @return      默认值，创建时读取失败或不是会话属性返回null
+     */
+    Object getSessionDefault(int bit)
+    {
+        if ((unknownBits & bit) != 0)
+            return null;
+        
+        switch (bit)
+        {
+            case DIRTY_AUTOCOMMIT:
+                return defAutoCommit;
+            case DIRTY_READONLY:
+                return defReadOnly;
+            case DIRTY_ISOLATION:
+                return defIsolation;
+            case DIRTY_CATALOG:
+                return defCatalog;
+            case DIRTY_HOLDABILITY:
+                return defHoldability;
+            case DIRTY_SCHEMA:
+                return defSchema;
+            default:
+                return null;
+        }
+    }
+    
+    /** 获取连接池状态 */
+    int getState()
+    {
+        return state;
+    }
+    
+    /** 设置连接池状态 */
+    void setState(int state)
+    {
+        this.state = state;
+    }
+    
+    /** 获取所属分片子池 */
+    int getStripe()
+    {
+        return stripe;
+    }
+    
+    /** 设置所属分片子池 */
+    void setStripe(int stripe)
+    {
+        this.stripe = stripe;
+    }
+    
+    /** CAS修改连接池状态 */
+    boolean compareAndSetState(int expect, int update)
+    {
+        return STATE_UPDATER.compareAndSet(this, expect, update);
     }
     
     /**
      * 检查数据库连接是否超过指定的最大保持时长、最大空闲时长和最大调用量
-     * 
+     *
      * @return =true表示超过,=false可用
      */
     public boolean isKeepOrIdleTimeout()
     {
         long cutTime = System.currentTimeMillis();
-        if ((cutTime - keepTimeMs) > source.getMaxKeepTimeMs())
+        if ((cutTime - keepTimeMs) > getMaxLifeTimeMs())
             return true;
         
         if ((cutTime - idleTimeMs) > source.getMaxIdleTimeMs())
@@ -117,8 +265,25 @@ public class SQLConnection implements Connection
     }
     
     /**
-     * 检查数据库连接
-     * 
+     * 检查数据库连接是否超过连接池配置的最大保持时长（不含抖动），超过的连接必须回收
+     *
+     * @return =true表示超过,=false未超过
+     */
+    public boolean isKeepTimeout()
+    {
+        return (System.currentTimeMillis() - keepTimeMs) > source.getMaxKeepTimeMs();
+    }
+    
+    /** 获取本连接的最大保持毫秒时长，按抖动系数在最大保持时长基础上提前 */
+    public long getMaxLifeTimeMs()
+    {
+        long maxKeepTimeMs = source.getMaxKeepTimeMs();
+        return maxKeepTimeMs - (long)(maxKeepTimeMs * source.getMaxKeepTimeJitter() / 100d * keepJitter);
+    }
+    
+    /**
+     * 检查数据库连接，最近使用过的连接在跳过检查时长内不再检查，否则按连接池配置的检查策略检查
+     *
      * @return =true,正常,=false不可用
      */
     public boolean isConnectionAvailable()
@@ -126,13 +291,34 @@ public class SQLConnection implements Connection
         if (conn == null)
             return false;
         
-        ResultSet rst = null;
+        long lastUsedMs = Math.max(idleTimeMs, activeTimeMs);
+        if (System.currentTimeMillis() - lastUsedMs < source.getValidationSkipTimeMs())
+            return true;
         
+        return probe();
+    }
+    
+    /**
+     * 直接检查数据库连接，不按最近使用跳过，检查通过时记录检查时间，用于后台检查
+     *
+     * @return =true,正常,=false不可用
+     */
+    boolean validate()
+    {
+        if (conn == null || !probe())
+            return false;
+        
+        verified();
+        return true;
+    }
+    
+    /** 按连接池配置的检查策略检查数据库连接，并记录检查耗时 */
+    private boolean probe()
+    {
+        long startNs = System.nanoTime();
         try
         {
-            DatabaseMetaData metaData = conn.getMetaData();
-            rst = metaData.getTables(null, null, "PROBABLYNOT", new String[] { "TABLE" });
-            return true;
+            return source.getValidator().isValid(conn, source.getValidationTimeout());
         }
         catch (SQLException e)
         {
@@ -140,10 +326,302 @@ public class SQLConnection implements Connection
         }
         finally
         {
-            DBClose.close(rst);
+            source.getMetrics().recordValidate(System.nanoTime() - startNs);
+        }
+    }
+    
+    /** 设置连接已通过检查，记录检查时间 */
+    void verified()
+    {
+        verifiedTimeMs = System.currentTimeMillis();
+    }
+    
+    /** 连接最近是否已通过后台检查，检查时间在2个后台检查周期内的认为有效，未开启后台检查时返回false */
+    public boolean isVerified()
+    {
+        long intervalMs = source.getValidationIntervalMs();
+        return intervalMs > 0 && System.currentTimeMillis() - verifiedTimeMs <= intervalMs * 2;
+    }
+    
+    /** 获取连接最近通过检查的时间 */
+    public long getVerifiedTimeMs()
+    {
+        return verifiedTimeMs;
+    }
+    
+    /** 设置连接已被驱逐，使用中的连接归还时销毁 */
+    void evict()
+    {
+        evicted = true;
+    }
+    
+    /** 当前连接是否已被驱逐，软重置或缩小连接池时设置 */
+    public boolean isEvicted()
+    {
+        return evicted;
+    }
+    
+    /** 当前连接是否已损坏，执行时出现过致命SQLState */
+    public boolean isBroken()
+    {
+        return broken;
+    }
+    
+    /**
+     * 检查连接和语句抛出的异常，致命的SQLState标记连接已损坏
+     *
+     * @param e     数据库异常
+     * @return      原异常，便于调用方直接抛出
+     */
+    SQLException checkException(SQLException e)
+    {
+        if (!broken && ConnectionTester.isFatalException(e))
+        {
+            broken = true;
+            log.error("数据库连接[%s][%s]出现致命异常[%s]，标记为已损坏", source.getId(), connId, e.getSQLState());
+        }
+        
+        return e;
+    }
+    
+    /** 读取会话属性作为当前值和默认值，读取失败的记为未知 */
+    private void readSession()
+    {
+        try
+        {
+            autoCommit = conn.getAutoCommit();
+        }
+        catch (SQLException e)
+        {
+            autoCommit = true;
+            unknownBits |= DIRTY_AUTOCOMMIT;
+        }
+        
+        try
+        {
+            readOnly = conn.isReadOnly();
+        }
+        catch (SQLException e)
+        {
+            unknownBits |= DIRTY_READONLY;
+        }
+        
+        try
+        {
+            isolation = conn.getTransactionIsolation();
+        }
+        catch (SQLException e)
+        {
+            unknownBits |= DIRTY_ISOLATION;
+        }
+        
+        try
+        {
+            catalog = conn.getCatalog();
+        }
+        catch (SQLException e)
+        {
+            unknownBits |= DIRTY_CATALOG;
+        }
+        
+        try
+        {
+            holdability = conn.getHoldability();
+        }
+        catch (SQLException e)
+        {
+            unknownBits |= DIRTY_HOLDABILITY;
+        }
+        
+        try
+        {
+            schema = conn.getSchema();
+        }
+        catch (SQLException | AbstractMethodError e)
+        {// JDBC4.1以前的驱动没有实现
+            unknownBits |= DIRTY_SCHEMA;
+        }
+        
+        try
+        {
+            networkTimeout = conn.getNetworkTimeout();
+        }
+        catch (SQLException | AbstractMethodError e)
+        {// JDBC4.1以前的驱动没有实现
+            unknownBits |= DIRTY_NETWORK_TIMEOUT;
+        }
+        
+        defAutoCommit = autoCommit;
+        defReadOnly = readOnly;
+        defIsolation = isolation;
+        defCatalog = catalog;
+        defHoldability = holdability;
+        defSchema = schema;
+        defNetworkTimeout = networkTimeout;
+    }
+    
+    /** 判断会话属性设置是否可跳过，当前值已知且相同时跳过 */
+    private boolean isUnchanged(int bit, boolean same)
+    {
+        return same && (unknownBits & bit) == 0;
+    }
+    
+    /** 记录借用者修改过的会话属性，归还时重置 */
+    private void changed(int bit)
+    {
+        dirtyBits |= bit;
+    }
+    
+    /**
+     * 归还前重置借用者改过的会话属性为默认值，恢复自动提交前先回滚未提交的事务，避免被隐式提交
+     *
+     * @return  =true表示重置成功，=false表示重置失败或改过默认值未知的会话属性，连接应销毁
+     */
+    boolean resetSession()
+    {
+        int dirty = dirtyBits;
+        if (dirty == 0)
+            return true;
+        
+        if ((dirty & unknownBits) != 0)
+        {// 默认值未知的会话属性被借用者改过，无法恢复，销毁连接避免下一个借用者继承
+            log.info("数据库连接[%s][%s]改过默认值未知的会话属性，不再归还", source.getId(), connId);
+            return false;
+        }
+        
+        try
+        {
+            if ((dirty & DIRTY_AUTOCOMMIT) != 0 && autoCommit != defAutoCommit)
+            {
+                if (!autoCommit)
+                    conn.rollback();
+                
+                conn.setAutoCommit(defAutoCommit);
+                autoCommit = defAutoCommit;
+            }
+            
+            if ((dirty & DIRTY_READONLY) != 0 && readOnly != defReadOnly)
+            {
+                conn.setReadOnly(defReadOnly);
+                readOnly = defReadOnly;
+            }
+            
+            if ((dirty & DIRTY_ISOLATION) != 0 && isolation != defIsolation)
+            {
+                conn.setTransactionIsolation(defIsolation);
+                isolation = defIsolation;
+            }
+            
+            if ((dirty & DIRTY_CATALOG) != 0 && defCatalog != null && !Objects.equals(catalog, defCatalog))
+            {
+                conn.setCatalog(defCatalog);
+                catalog = defCatalog;
+            }
+            
+            if ((dirty & DIRTY_HOLDABILITY) != 0 && holdability != defHoldability)
+            {
+                conn.setHoldability(defHoldability);
+                holdability = defHoldability;
+            }
+            
+            if ((dirty & DIRTY_SCHEMA) != 0 && defSchema != null && !Objects.equals(schema, defSchema))
+            {
+                conn.setSchema(defSchema);
+                schema = defSchema;
+            }
+            
+            if ((dirty & DIRTY_NETWORK_TIMEOUT) != 0 && networkTimeout != defNetworkTimeout)
+            {
+                conn.setNetworkTimeout(SYNC_EXECUTOR, defNetworkTimeout);
+                networkTimeout = defNetworkTimeout;
+            }
+            
+            dirtyBits = 0;
+            return true;
+        }
+        catch (SQLException e)
+        {
+            checkException(e);
+            log.error("数据库连接[%s][%s]重置会话属性失败[%s]", source.getId(), connId, e.getMessage());
+            return false;
+        }
+    }
+    
+    /** 设置连接池默认的事务隔离级别，创建连接时调用，和当前值相同时不发送到数据库 */
+    void setDefaultTransactionIsolation(int level) throws SQLException
+    {
+        setTransactionIsolation(level);
+        defIsolation = isolation;
+        dirtyBits &= ~DIRTY_ISOLATION;
+    }
+    
+    /** 设置连接池默认的只读属性，创建连接时调用，和当前值相同时不发送到数据库 */
+    void setDefaultReadOnly(boolean readOnly) throws SQLException
+    {
+        setReadOnly(readOnly);
+        defReadOnly = this.readOnly;
+        dirtyBits &= ~DIRTY_READONLY;
+    }
+    
+    /** 设置连接池默认的网络超时毫秒数，创建连接时调用，驱动不支持时忽略 */
+    void setDefaultNetworkTimeout(int milliseconds) throws SQLException
+    {
+        try
+        {
+            setNetworkTimeout(SYNC_EXECUTOR, milliseconds);
+            defNetworkTimeout = networkTimeout;
+            dirtyBits &= ~DIRTY_NETWORK_TIMEOUT;
+        }
+        catch (SQLFeatureNotSupportedException e)
+        {
+            log.warn("数据库连接[%s][%s]驱动不支持设置网络超时", source.getId(), connId);
         }
     }
     
+    /** 获取连接池默认的语句执行超时秒数，创建语句时设置 */
+    int getDefaultQueryTimeout()
+    {
+        return source.getQueryTimeout();
+    }
+    
+    /** 开始执行语句 */
+    void executing(Statement stmt)
+    {
+        execCancelled = false;
+        execStartMs = System.currentTimeMillis();
+        execStmt = stmt;
+    }
+    
+    /** 语句执行结束 */
+    void executed()
+    {
+        execStmt = null;
+    }
+    
+    /** 获取正在执行的语句，=null表示没有执行 */
+    Statement getExecStatement()
+    {
+        return execStmt;
+    }
+    
+    /** 获取正在执行的语句开始时间 */
+    long getExecStartMs()
+    {
+        return execStartMs;
+    }
+    
+    /** 正在执行的语句是否已被取消 */
+    boolean isExecCancelled()
+    {
+        return execCancelled;
+    }
+    
+    /** 设置正在执行的语句已被取消 */
+    void setExecCancelled()
+    {
+        execCancelled = true;
+    }
+    
     public void setAutoCommit()
     {
         try
@@ -154,9 +632,36 @@ public class SQLConnection implements Connection
         {}
     }
     
+    /** 标记已关闭，之后不再借出和归还，物理连接由关闭器异步关闭 */
+    void retire()
+    {
+        closed = true;
+    }
+    
+    /** 关闭物理连接，先设置网络超时，网络已断开时关闭最多阻塞超时时长 */
+    void shutdown(Executor executor, int timeoutMs)
+    {
+        closed = true;
+        if (timeoutMs > 0)
+        {
+            try
+            {
+                conn.setNetworkTimeout(executor, timeoutMs);
+            }
+            catch (SQLException | AbstractMethodError e)
+            {// 驱动不支持或连接已断开时直接关闭
+            }
+        }
+        
+        shutdown();
+    }
+    
     void shutdown()
     {
         closed = true;
+        if (stmtCache != null)
+            stmtCache.clear();
+        
         try
         {
             if (!conn.isClosed())
@@ -177,12 +682,82 @@ public class SQLConnection implements Connection
         source.release(this);
     }
     
+    /** 生成语句缓存键，未开启语句缓存时返回null */
+    private StatementCache.Key newStatementKey(boolean callable, String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability, int autoGeneratedKeys, int[] columnIndexes, String[] columnNames)
+    {
+        if (stmtCache == null)
+            return null;
+        
+        return new StatementCache.Key(callable, sql, resultSetType, resultSetConcurrency, resultSetHoldability, autoGeneratedKeys, columnIndexes, columnNames);
+    }
+    
+    /** 从语句缓存中取出物理语句，未开启或未命中返回null */
+    private PreparedStatement takeStatement(StatementCache.Key key)
+    {
+        return key == null ? null : stmtCache.take(key);
+    }
+    
+    /** 业务关闭缓存的语句时放回语句缓存，恢复业务修改过的语句设置，连接已损坏或已关闭时直接关闭语句 */
+    void requiteStatement(StatementCache.Key key, PreparedStatement stmt, StatementCache.Settings settings) throws SQLException
+    {
+        if (!broken && !closed)
+        {
+            stmtCache.put(key, stmt, settings);
+            return;
+        }
+        
+        try
+        {
+            stmt.close();
+        }
+        catch (SQLException e)
+        {
+            throw checkException(e);
+        }
+    }
+    
+    /** 获取语句缓存数 */
+    public int getStmtCacheSize()
+    {
+        return stmtCache == null ? 0 : stmtCache.size();
+    }
+    
     /** 获取连接已保持时长 */
     public long getKeepTimeMs()
     {
         return keepTimeMs;
     }
     
+    /** 获取连接借用时间 */
+    public long getActiveTimeMs()
+    {
+        return activeTimeMs;
+    }
+    
+    /** 获取借用线程，=null表示未借出 */
+    public Thread getBorrowThread()
+    {
+        return borrowThread;
+    }
+    
+    /** 获取借用堆栈，=null表示未采样 */
+    public Throwable getBorrowTrace()
+    {
+        return borrowTrace;
+    }
+    
+    /** 本次借用是否已报告泄漏 */
+    boolean isLeakReported()
+    {
+        return leakReported;
+    }
+    
+    /** 设置本次借用已报告泄漏 */
+    void setLeakReported()
+    {
+        leakReported = true;
+    }
+    
     /** 获取连接已空闲时长 */
     public long getIdleTimeMs()
     {
@@ -206,12 +781,26 @@ public class SQLConnection implements Connection
     
     public void commit() throws SQLException
     {
-        conn.commit();
+        try
+        {
+            conn.commit();
+        }
+        catch (SQLException e)
+        {
+            throw checkException(e);
+        }
     }
     
     public void rollback() throws SQLException
     {
-        conn.rollback();
+        try
+        {
+            conn.rollback();
+        }
+        catch (SQLException e)
+        {
+            throw checkException(e);
+        }
     }
     
     public boolean getAutoCommit() throws SQLException
@@ -241,23 +830,70 @@ public class SQLConnection implements Connection
     
     public void setHoldability(int holdability) throws SQLException
     {
-        conn.setHoldability(holdability);
+        if (isUnchanged(DIRTY_HOLDABILITY, this.holdability == holdability))
+            return;
+        
+        try
+        {
+            conn.setHoldability(holdability);
+            this.holdability = holdability;
+            changed(DIRTY_HOLDABILITY);
+        }
+        catch (SQLException e)
+        {
+            throw checkException(e);
+        }
     }
     
     public void setTransactionIsolation(int level) throws SQLException
     {
-        conn.setTransactionIsolation(level);
+        if (isUnchanged(DIRTY_ISOLATION, this.isolation == level))
+            return;
+        
+        try
+        {
+            conn.setTransactionIsolation(level);
+            this.isolation = level;
+            changed(DIRTY_ISOLATION);
+        }
+        catch (SQLException e)
+        {
+            throw checkException(e);
+        }
     }
     
     public void setAutoCommit(boolean autoCommit) throws SQLException
     {
-        this.autoCommit = autoCommit;
-        conn.setAutoCommit(autoCommit);
+        if (isUnchanged(DIRTY_AUTOCOMMIT, this.autoCommit == autoCommit))
+            return;
+        
+        try
+        {
+            conn.setAutoCommit(autoCommit);
+            this.autoCommit = autoCommit;
+            changed(DIRTY_AUTOCOMMIT);
+        }
+        catch (SQLException e)
+        {
+            throw checkException(e);
+        }
     }
     
     public void setReadOnly(boolean readOnly) throws SQLException
     {
-        conn.setReadOnly(readOnly);
+        if (isUnchanged(DIRTY_READONLY, this.readOnly == readOnly))
+            return;
+        
+        try
+        {
+            conn.setReadOnly(readOnly);
+            this.readOnly = readOnly;
+            changed(DIRTY_READONLY);
+        }
+        catch (SQLException e)
+        {
+            throw checkException(e);
+        }
     }
     
     public String getCatalog() throws SQLException
@@ -267,7 +903,19 @@ public class SQLConnection implements Connection
     
     public void setCatalog(String catalog) throws SQLException
     {
-        conn.setCatalog(catalog);
+        if (isUnchanged(DIRTY_CATALOG, Objects.equals(this.catalog, catalog)))
+            return;
+        
+        try
+        {
+            conn.setCatalog(catalog);
+            this.catalog = catalog;
+            changed(DIRTY_CATALOG);
+        }
+        catch (SQLException e)
+        {
+            throw checkException(e);
+        }
     }
     
     public DatabaseMetaData getMetaData() throws SQLException
@@ -297,17 +945,38 @@ public class SQLConnection implements Connection
     
     public Statement createStatement() throws SQLException
     {
-        return conn.createStatement();
+        try
+        {
+            return SQLStatement.newProxy(this, conn.createStatement(), Statement.class);
+        }
+        catch (SQLException e)
+        {
+            throw checkException(e);
+        }
     }
     
     public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException
     {
-        return conn.createStatement(resultSetType, resultSetConcurrency);
+        try
+        {
+            return SQLStatement.newProxy(this, conn.createStatement(resultSetType, resultSetConcurrency), Statement.class);
+        }
+        catch (SQLException e)
+        {
+            throw checkException(e);
+        }
     }
     
     public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException
     {
-        return conn.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+        try
+        {
+            return SQLStatement.newProxy(this, conn.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability), Statement.class);
+        }
+        catch (SQLException e)
+        {
+            throw checkException(e);
+        }
     }
     
     public Map<String, Class<?>> getTypeMap() throws SQLException
@@ -327,42 +996,138 @@ public class SQLConnection implements Connection
     
     public CallableStatement prepareCall(String sql) throws SQLException
     {
-        return conn.prepareCall(sql);
+        StatementCache.Key key = newStatementKey(true, sql, -1, -1, -1, -1, null, null);
+        try
+        {
+            CallableStatement stmt = (CallableStatement)takeStatement(key);
+            if (stmt == null)
+                stmt = conn.prepareCall(sql);
+            
+            return SQLStatement.newProxy(this, stmt, CallableStatement.class, key);
+        }
+        catch (SQLException e)
+        {
+            throw checkException(e);
+        }
     }
     
     public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException
     {
-        return conn.prepareCall(sql, resultSetType, resultSetConcurrency);
+        StatementCache.Key key = newStatementKey(true, sql, resultSetType, resultSetConcurrency, -1, -1, null, null);
+        try
+        {
+            CallableStatement stmt = (CallableStatement)takeStatement(key);
+            if (stmt == null)
+                stmt = conn.prepareCall(sql, resultSetType, resultSetConcurrency);
+            
+            return SQLStatement.newProxy(this, stmt, CallableStatement.class, key);
+        }
+        catch (SQLException e)
+        {
+            throw checkException(e);
+        }
     }
     
     public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException
     {
-        return conn.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+        StatementCache.Key key = newStatementKey(true, sql, resultSetType, resultSetConcurrency, resultSetHoldability, -1, null, null);
+        try
+        {
+            CallableStatement stmt = (CallableStatement)takeStatement(key);
+            if (stmt == null)
+                stmt = conn.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+            
+            return SQLStatement.newProxy(this, stmt, CallableStatement.class, key);
+        }
+        catch (SQLException e)
+        {
+            throw checkException(e);
+        }
     }
     
     public PreparedStatement prepareStatement(String sql) throws SQLException
     {
-        return conn.prepareStatement(sql);
+        StatementCache.Key key = newStatementKey(false, sql, -1, -1, -1, -1, null, null);
+        try
+        {
+            PreparedStatement stmt = takeStatement(key);
+            if (stmt == null)
+                stmt = conn.prepareStatement(sql);
+            
+            return SQLStatement.newProxy(this, stmt, PreparedStatement.class, key);
+        }
+        catch (SQLException e)
+        {
+            throw checkException(e);
+        }
     }
     
     public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException
     {
-        return conn.prepareStatement(sql, autoGeneratedKeys);
+        StatementCache.Key key = newStatementKey(false, sql, -1, -1, -1, autoGeneratedKeys, null, null);
+        try
+        {
+            PreparedStatement stmt = takeStatement(key);
+            if (stmt == null)
+                stmt = conn.prepareStatement(sql, autoGeneratedKeys);
+            
+            return SQLStatement.newProxy(this, stmt, PreparedStatement.class, key);
+        }
+        catch (SQLException e)
+        {
+            throw checkException(e);
+        }
     }
     
     public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException
     {
-        return conn.prepareStatement(sql, resultSetType, resultSetConcurrency);
+        StatementCache.Key key = newStatementKey(false, sql, resultSetType, resultSetConcurrency, -1, -1, null, null);
+        try
+        {
+            PreparedStatement stmt = takeStatement(key);
+            if (stmt == null)
+                stmt = conn.prepareStatement(sql, resultSetType, resultSetConcurrency);
+            
+            return SQLStatement.newProxy(this, stmt, PreparedStatement.class, key);
+        }
+        catch (SQLException e)
+        {
+            throw checkException(e);
+        }
     }
     
     public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException
     {
-        return conn.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+        StatementCache.Key key = newStatementKey(false, sql, resultSetType, resultSetConcurrency, resultSetHoldability, -1, null, null);
+        try
+        {
+            PreparedStatement stmt = takeStatement(key);
+            if (stmt == null)
+                stmt = conn.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+            
+            return SQLStatement.newProxy(this, stmt, PreparedStatement.class, key);
+        }
+        catch (SQLException e)
+        {
+            throw checkException(e);
+        }
     }
     
     public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException
     {
-        return conn.prepareStatement(sql, columnIndexes);
+        StatementCache.Key key = newStatementKey(false, sql, -1, -1, -1, -1, columnIndexes, null);
+        try
+        {
+            PreparedStatement stmt = takeStatement(key);
+            if (stmt == null)
+                stmt = conn.prepareStatement(sql, columnIndexes);
+            
+            return SQLStatement.newProxy(this, stmt, PreparedStatement.class, key);
+        }
+        catch (SQLException e)
+        {
+            throw checkException(e);
+        }
     }
     
     public Savepoint setSavepoint(String name) throws SQLException
@@ -372,7 +1137,19 @@ public class SQLConnection implements Connection
     
     public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException
     {
-        return conn.prepareStatement(sql, columnNames);
+        StatementCache.Key key = newStatementKey(false, sql, -1, -1, -1, -1, null, columnNames);
+        try
+        {
+            PreparedStatement stmt = takeStatement(key);
+            if (stmt == null)
+                stmt = conn.prepareStatement(sql, columnNames);
+            
+            return SQLStatement.newProxy(this, stmt, PreparedStatement.class, key);
+        }
+        catch (SQLException e)
+        {
+            throw checkException(e);
+        }
     }
     
     public <T> T unwrap(Class<T> iface) throws SQLException
@@ -446,23 +1223,92 @@ public class SQLConnection implements Connection
     
     public void setSchema(String schema) throws SQLException
     {
+        if (isUnchanged(DIRTY_SCHEMA, Objects.equals(this.schema, schema)))
+            return;
+        
+        try
+        {
+            conn.setSchema(schema);
+            this.schema = schema;
+            changed(DIRTY_SCHEMA);
+        }
+        catch (SQLException e)
+        {
+            throw checkException(e);
+        }
     }
     
     public String getSchema() throws SQLException
     {
-        return null;
+        return conn.getSchema();
     }
     
-    public void abort(Executor executor) throws SQLException
+    /**
+     * 中止连接，标记为已损坏并由执行器异步关闭物理连接，立即移出连接池释放名额，不等待正在执行的语句
+     *
+     * @param executor      执行器，驱动不支持或中止失败时在执行器中关闭物理连接
+     * @throws SQLException 执行器为null
+     */
+    public void abort(final Executor executor) throws SQLException
     {
+        if (executor == null)
+            throw new SQLException("中止数据库连接的执行器不能为null");
+        
+        if (closed)
+            return;
+        
+        broken = true;
+        closed = true;
+        try
+        {
+            conn.abort(executor);
+        }
+        catch (SQLException | AbstractMethodError e)
+        {// 驱动不支持或中止失败时在执行器中关闭物理连接
+            executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    shutdown();
+                }
+            });
+        }
+        finally
+        {// 中止和关闭异常都移出连接池，已标记关闭的连接不能再留在池中
+            source.discard(this);
+        }
     }
     
     public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException
     {
+        if (isUnchanged(DIRTY_NETWORK_TIMEOUT, this.networkTimeout == milliseconds))
+            return;
+        
+        try
+        {
+            conn.setNetworkTimeout(executor, milliseconds);
+            this.networkTimeout = milliseconds;
+            changed(DIRTY_NETWORK_TIMEOUT);
+        }
+        catch (AbstractMethodError e)
+        {
+            throw new SQLFeatureNotSupportedException("数据库驱动不支持设置网络超时");
+        }
+        catch (SQLException e)
+        {
+            throw checkException(e);
+        }
     }
     
     public int getNetworkTimeout() throws SQLException
     {
-        return 0;
+        try
+        {
+            return conn.getNetworkTimeout();
+        }
+        catch (AbstractMethodError e)
+        {
+            throw new SQLFeatureNotSupportedException("数据库驱动不支持获取网络超时");
+        }
     }
 }
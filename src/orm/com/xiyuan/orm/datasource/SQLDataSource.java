@@ -1,74 +1,148 @@
 package com.xiyuan.orm.datasource;
 
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.naming.InitialContext;
 import javax.sql.DataSource;
 
 import org.xiyuan.core.constants.SignConstants;
-import org.xiyuan.core.control.ThreadLock;
 import org.xiyuan.core.control.Threadx;
 import org.xiyuan.core.logging.Log;
 import org.xiyuan.core.logging.LogFactory;
 import org.xiyuan.core.util.Classes;
-import org.xiyuan.core.util.Lists;
 import org.xiyuan.core.util.Randoms;
 import org.xiyuan.core.util.Threads;
 import org.xiyuan.core.util.seqs.Sequence;
 
 /**
- * 数据库配置与管理类 <br>
+ * 数据库配置与管理类 <br><br>
+ * 监视线程只按检查间隔定时，监视检查提交到本连接池的创建线程中执行，空闲检查、泄漏检测等其他周期任务在共享后台维护调度器上执行<br>
  *
  * @version v1.0.0 @author lgz 2016-3-21 新建与整理
  */
-public class SQLDataSource extends Threadx implements DataSource, Runnable, SignConstants
+public class SQLDataSource extends Threadx implements DataSource, Runnable, SignConstants, SQLDataSourceMBean
 {
     private static final Log log = LogFactory.getLog("database.log");
     
     private static final String JNDI = "jndi"; // JNDI
-    private static final int CHK_TIME = 60 * 1000; // 每60秒检查一次线程池
+    private static final int CHK_TIME = 60 * 1000; // 默认每60秒检查一次线程池
+    private static final int ADAPTIVE_SAMPLE_TIME = 5 * 1000; // 自适应大小每5秒采样一次
+    private static final int RECOVER_MIN_TIME = 500; // 数据库断开后首次探测间隔
+    private static final int RECOVER_MAX_TIME = 10 * 1000; // 数据库断开后最长探测间隔
     
     // 数据库基础属性
     private final String id; // 数据库服务编号
     private final Sequence sequence = new Sequence(6); // 数据库连接序号
-    private final ThreadLock lock = new ThreadLock(); // 数据库连接有效时通知锁
-    private final List<SQLConnection> connList; // 数据库连接池
-    private final ConcurrentHashMap<SQLConnection, String> closedMap; // 数据库连接池等待关闭列表
+    private final ConnectionBag connBag; // 数据库连接池，无锁借还
     private final AtomicInteger activeSize; // 数据库连接活跃数
+    private final AtomicInteger totalSize; // 数据库连接总数，含已预留正在创建的连接，用于控制不超过最大连接数
+    private final PoolMetrics metrics; // 数据库连接池统计指标
+    private ThreadPoolExecutor creator; // 数据库连接异步创建器，在连接池锁外创建物理连接
+    private volatile ScheduledThreadPoolExecutor housekeeper; // 共享后台维护调度器，所有连接池共用，执行空闲连接检查、泄漏检测等周期任务
+    private ScheduledFuture<?> validationTask; // 空闲连接后台检查任务
+    private ScheduledFuture<?> leakTask; // 连接泄漏检测任务
+    private ScheduledFuture<?> adaptiveTask; // 自适应大小调整任务
+    private ScheduledFuture<?> stmtTimeoutTask; // 语句执行硬超时检查任务
+    private volatile AdaptiveSizer sizer; // 自适应大小计算器，=null表示未开启
+    private final CircuitBreaker breaker; // 熔断器，数据库不可用时获取连接快速失败
+    private final ConnectionCloser closer; // 数据库连接异步关闭器，物理连接的关闭和中止在关闭线程中执行，不阻塞借还和后台维护
     
     // 数据库驱动配置
     private String driver; // 数据库驱动
     private String url; // 数据库URL
+    private volatile Endpoint[] endpoints; // 数据库连接节点，第一个为url，其后为备用URL，创建连接时按健康状况选择
     private String user; // 数据库用户名
     private String pass; // 数据库密码
+    private boolean isReadOnly; // 连接默认是否只读，从库连接池设置为只读
     private int level; // 事务隔离级别0/1/2/4/8分别表示不支持事务/脏读/不支持读未提交/再次读取相同的数据而不会失败，但虚读仍然会出现/防止脏读、不可重复的读和虚读
     
     // 数据库连接池配置
     private int minPoolSize; // 连接池最小数目
     private int maxPoolSize; // 连接池最大数目
+    private int poolStripes = 1; // 连接池分片子池数，借用时先查本线程所属的子池，默认1表示不分片
+    private boolean isLazyBind = false; // 是否延迟绑定，开启后getConnection()返回逻辑连接，执行语句时才借用物理连接，语句关闭且无事务时归还
     private long maxKeepTimeMs; // 数据库连接最大保持毫秒时间，超出则重建连接
     private long maxIdleTimeMs; // 数据库连接最大空闲毫秒时间，超出则重建连接
+    private int maxKeepTimeJitter = 10; // 数据库连接最大保持时长抖动百分比，每个连接随机提前到期，默认10表示在最大保持时长的90%~100%之间到期
+    private int maxRetirePerCheck = 0; // 每个检查周期内最多回收的到期连接数，超出的推迟到下个周期，超过最大保持时长的不受限制，默认0表示不限制
+    private final AtomicInteger retireCount = new AtomicInteger(0); // 当前检查周期内已回收的到期连接数
+    private volatile long retireWindowMs; // 当前检查周期的开始时间
     
     // 数据库连接检查配置
     private boolean isChkConnOnTimer; // 是否定时检查连接有效性
     private boolean isGetEffective; // 是否在获取连接时检查连接有效性
+    private boolean isChkConnOnRelease; // 是否在释放连接时检查连接有效性，默认不检查，由执行时异常标记损坏的连接
+    private ConnectionValidator validator; // 连接检查策略，默认JDBC4的isValid
+    private int validationTimeout = 5; // 连接检查超时时长，单位秒
+    private long validationSkipTimeMs = 500; // 连接最近使用过多少毫秒内不再检查，=0表示每次都检查
+    private long validationIntervalMs = 0; // 空闲连接后台检查间隔毫秒数，获取时信任未过期的检查结果，默认0表示不开启
     
     // 数据库连接耗尽策略配置
     private int outOfConnWaitTimeMs; // 数据库连接耗尽时，最大等待时长，单位毫秒，建议5000毫秒
     private int outOfConnRetryCount; // 数据库连接耗尽时，重试次数，建议重试1次
     
+    // 自适应大小配置
+    private boolean isAdaptive = false; // 是否按需求自适应调整连接数，在最小连接数和最大连接数之间提前扩容、空闲时缩容
+    private int adaptiveWindow = 60; // 自适应统计的滑动窗口时长，单位秒，窗口内都没使用过的空闲连接才缩容
+    private int adaptiveHeadroom = 25; // 自适应目标连接数在窗口最大需求基础上的余量百分比
+    
+    // 连接泄漏检测配置
+    private long leakDetectionThresholdMs = 0; // 连接借出超过多少毫秒认为泄漏，默认0表示不检测
+    private int leakTraceSampling = 10; // 每多少次借用记录一次借用堆栈，=1表示每次记录，=0表示不记录
+    private boolean isLeakReclaim = false; // 是否强制回收泄漏的连接，回收时关闭物理连接，占用者后续操作将抛出异常
+    private final AtomicLong leakCount = new AtomicLong(0); // 检测到的泄漏数
+    
+    // 超时配置
+    private int queryTimeout = 0; // 语句默认执行超时秒数，创建语句时设置，默认0表示不设置
+    private int networkTimeoutMs = 0; // 连接默认网络超时毫秒数，创建连接时设置，默认0表示不设置
+    private long stmtHardTimeoutMs = 0; // 语句执行硬上限毫秒数，超过时后台线程取消语句，取消无效时中止连接，默认0表示不检查
+    private final AtomicLong stmtCancels = new AtomicLong(0); // 取消和中止的语句数
+    
+    // 语句缓存配置
+    private int stmtCacheSize = 0; // 每个连接缓存的PreparedStatement/CallableStatement数，默认0表示不缓存
+    private final AtomicLong stmtCacheHits = new AtomicLong(0); // 语句缓存命中数
+    private final AtomicLong stmtCacheMisses = new AtomicLong(0); // 语句缓存未命中数
+    private final AtomicLong stmtCacheEvictions = new AtomicLong(0); // 语句缓存淘汰数
+    
+    // 数据库连接池预热配置
+    private int initConcurrency = 1; // 初始化连接池时并行创建连接的线程数，默认1表示顺序创建
+    private int initQuorum = 0; // 初始化连接池时达到该连接数即认为就绪，其余连接后台继续创建，默认0表示等最小连接数全部创建
+    private int recoverConcurrency = 4; // 数据库恢复后并行重建连接的线程数，每批创建该数目的连接
+    
     // 数据库状态属性
-    private boolean isDbBreak; // 数据库是否已断开
+    private volatile boolean isClosing; // 连接池是否正在关闭或已关闭，关闭后不再接收新建的连接
+    private volatile boolean isDbBreak; // 数据库是否已断开，由监视任务定时检查
+    private volatile boolean isRecovering; // 是否在恢复模式，恢复期间监视任务不做检查
+    private long recoverStartMs; // 进入恢复模式的时间
+    private int recoverProbes; // 恢复模式的探测次数
+    private volatile long checkTimeMs = CHK_TIME; // 监视检查间隔毫秒数
+    private final AtomicBoolean monitorBusy = new AtomicBoolean(false); // 监视检查已提交到创建器未执行完
+    private final AtomicBoolean validationBusy = new AtomicBoolean(false); // 空闲连接后台检查已提交到创建器未执行完
+    private final AtomicBoolean recoverBusy = new AtomicBoolean(false); // 恢复探测已提交到创建器未执行完
     private ConnectionTester tester; // 数据库连接测试类
     
     /**
@@ -111,13 +185,17 @@ public class SQLDataSource extends Threadx implements DataSource, Runnable, Sign
     {
         // 配置
         this.id = id != null ? id : Randoms.lettersDigits(2);
-        this.connList = new LinkedList<>();
-        this.closedMap = new ConcurrentHashMap<>();
+        this.connBag = new ConnectionBag();
         this.activeSize = new AtomicInteger(0);
+        this.totalSize = new AtomicInteger(0);
+        this.metrics = new PoolMetrics();
+        this.breaker = new CircuitBreaker(this.id);
+        this.closer = new ConnectionCloser(this.id, newThreadFactory("closer"));
         
         // 基础参数
         this.driver = driver;
         this.url = url;
+        this.endpoints = new Endpoint[]{new Endpoint(0, url)};
         this.user = user;
         this.pass = pass;
         this.level = level;
@@ -129,8 +207,10 @@ public class SQLDataSource extends Threadx implements DataSource, Runnable, Sign
         this.maxIdleTimeMs = maxIdleTime * 1000;
         this.isChkConnOnTimer = isChkConnOnTimer;
         this.isGetEffective = isGetEffective;
+        this.isChkConnOnRelease = isChkConnOnRelease;
         this.outOfConnWaitTimeMs = outOfConnWaitTime * 1000;
         this.outOfConnRetryCount = outOfConnRetryCount;
+        this.validator = new ConnectionValidatorJdbc4();
     }
     
     /** 数据库信息 */
@@ -146,6 +226,7 @@ public class SQLDataSource extends Threadx implements DataSource, Runnable, Sign
                 .append("mIdle:").append(maxIdleTimeMs / 1000).append(",")
                 .append("isTimer:").append(isChkConnOnTimer).append(",")
                 .append("isGetEffective:").append(isGetEffective).append(",")
+                .append("isRelease:").append(isChkConnOnRelease).append(",")
                 .append("outWait:").append(outOfConnWaitTimeMs / 1000).append(",")
                 .append("outRetry:").append(outOfConnRetryCount).append("]")
                 .toString();
@@ -155,107 +236,275 @@ public class SQLDataSource extends Threadx implements DataSource, Runnable, Sign
     // 数据库服务线程开启&关闭&运行
     /**********************************************************************************/
     
+    /** 线程名，连接池内部线程以此为前缀 */
     @Override
-    /** 线程名 */
     protected String getThreadName()
     {
         return "ZDataSource-" + id;
     }
     
+    /** 开启前，异常时记录日志返回false */
     @Override
-    /** 线程开启前 */
     protected boolean startBefore()
     {
-        if (!createConnectionTester())
-        {// 创建连接测试者
+        try
+        {
+            isClosing = false;
+            
+            // 开启连接异步关闭器，检测和创建失败的连接也异步关闭
+            closer.start();
+            
+            if (!createConnectionTester())
+            {// 创建连接测试者
+                return false;
+            }
+            
+            // 2.先删除已有的连接
+            deleteConnections();
+            
+            // 3.创建连接异步创建器
+            createConnectionCreator();
+            
+            // 4.创建新的连接，支持并行预热
+            if (!createConnectionsParallel("初始化", initConcurrency, initQuorum))
+                return false;
+            
+            // 5.获取共享后台维护调度器，开启空闲连接后台检查
+            createHousekeeper();
+            
+            // 6.注册JMX管理接口
+            registerMBean();
+            return true;
+        }
+        catch (Throwable e)
+        {
+            log.error("数据库[%s]启动异常", e, id);
             return false;
         }
-        
-        // 2.先删除已有的连接
-        deleteConnections();
-        
-        // 3.创建新的连接
-        return createConnections("初始化");
     }
     
+    /** 关闭前，标记正在关闭，之后检测新建的连接不再交给连接池 */
+    @Override
+    protected void closeBefore()
+    {
+        isClosing = true;
+    }
+    
+    /** 关闭后 */
     @Override
-    /** 线程关闭后 */
     protected void closeAfter()
     {
+        unregisterMBean();
+        releaseHousekeeper();
+        for (ConnectionFuture future : connBag.clearAsync())
+        {// 异步等待者直接置为失败，共享调度器上的超时任务到期时发现已完成不再处理
+            future.fail(new SQLException("数据库连接池[" + id + "]已关闭"));
+        }
+        creator.shutdownNow();
         deleteConnections();
-        tester.shutdown();
+        closer.shutdown();
         
-        log.info("数据库[%s]监视线程退出", id);
+        log.info("数据库[%s]连接池关闭", id);
     }
     
+    /** 监视线程按检查间隔定时，监视检查提交到创建器执行，不占用监视线程，恢复模式期间不检查 */
     @Override
-    /** 线程首次运行 */
-    protected void first()
+    protected void loop()
     {
-        Threads.sleepIgnoreException(CHK_TIME);
+        Threads.sleepIgnoreException((int)checkTimeMs);
+        if (!isRunning() || isRecovering)
+            return;
+        
+        submitBlocking(monitorBusy, "监视检查", new Runnable()
+        {
+            public void run()
+            {
+                if (isRunning() && !isRecovering)
+                    monitor();
+            }
+        });
     }
     
-    @Override
-    /** 线程持续运行 */
-    protected void loop()
+    /**
+     * 提交阻塞的后台任务到创建器执行，网络检查和创建连接不占用共享后台维护调度器的线程，慢数据库不影响其他连接池 <br>
+     * 上次提交的同一任务未执行完时跳过本次，创建器未创建或已关闭时不提交
+     *
+     * @param busy  同一任务是否已提交未执行完
+     * @param desc  任务描述，异常时记录
+     * @param task  任务
+     * @return      =true表示已提交，=false表示未提交
+     */
+    private boolean submitBlocking(final AtomicBoolean busy, final String desc, final Runnable task)
     {
-        // 1.打印数据库日记信息
-        log.info(toString());
+        ThreadPoolExecutor executor = creator;
+        if (executor == null || executor.isShutdown() || !busy.compareAndSet(false, true))
+            return false;
         
-        // 2.关闭等待关闭的连接
-        for (Iterator<SQLConnection> it = closedMap.keySet().iterator(); it.hasNext();)
+        try
         {
-            SQLConnection conn = it.next();
-            conn.shutdown();
-            it.remove();
-            log.info("监视关闭数据库等待关闭的连接[%s][%s]成功", id, conn.getId());
+            executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        task.run();
+                    }
+                    catch (Throwable e)
+                    {// 异常只记录，不影响创建器继续执行
+                        log.error("数据库[%s]%s异常", e, id, desc);
+                    }
+                    finally
+                    {
+                        busy.set(false);
+                    }
+                }
+            });
+            return true;
         }
+        catch (RejectedExecutionException e)
+        {// 创建器已并发关闭
+            busy.set(false);
+            return false;
+        }
+    }
+    
+    /** 监视检查连接池 */
+    private void monitor()
+    {
+        // 1.打印数据库日记信息和统计指标
+        log.info(toString());
+        log.info("数据库[%s]统计指标%s", id, metrics);
         
-        // 3.检查数据库是否断开
+        // 2.检查数据库是否断开
         isDbBreak = tester.isDbBreak();
+        breaker.onDbCheck(isDbBreak);
         if (isDbBreak)
-        {// 如果数据库断开,则关闭所有连接
+        {// 如果数据库断开,则关闭所有连接，进入恢复模式直到数据库恢复
             deleteConnections();
+            startRecover();
             return;
         }
         
-        // 4.检查所有连接，关闭需要关闭的连接（已关闭、超出时长和连接不可用）
-        List<SQLConnection> list = Lists.copy(connList, true);
-        for (SQLConnection conn : list)
+        // 3.检查所有连接，关闭需要关闭的连接（已关闭、超出时长和连接不可用）
+        for (SQLConnection conn : connBag.values())
         {
-            // 活动中的连接不检查
-            if (conn.isActive())
+            // 活动中的连接不检查，预留成功后借用者不会再取到该连接
+            if (!connBag.reserve(conn))
                 continue;
             
-            if (conn.isClosed() || conn.isKeepOrIdleTimeout() || (isChkConnOnTimer && !conn.isConnectionAvailable()))
-            {// 已关闭、已超出时长或数目、和要求定时检查连接连接不可用时，三种情况下销毁连接并从队列移除
-                synchronized (connList)
-                {
-                    connList.remove(conn);
-                }
+            if (conn.isClosed() || isExpired(conn) || (isChkConnOnTimer && !conn.isConnectionAvailable()))
+            {// 已关闭、已超出时长或数目、和要求定时检查连接连接不可用时，三种情况下销毁连接并从队列移除，物理连接异步关闭
+                removeConnection(conn);
                 
                 String connId = conn.getId();
-                conn.shutdown();
+                closer.close(conn);
                 conn = null;
                 
                 log.info("监视关闭数据库连接[%s][%s]成功", id, connId);
             }
+            else
+            {// 检查通过的恢复为空闲
+                connBag.unreserve(conn);
+            }
+        }
+        // 4.补足最小连接数，异步创建不阻塞后台维护调度器
+        while (addConnectionAsync("补足", minPoolSize))
+        {// 逐个预留名额直到最小连接数
         }
-        // 5.补足最小连接数
-        createConnections("补足");
-        // 6.等待60秒进入下次循环
-        Threads.sleepIgnoreException(CHK_TIME);
     }
     
-    /**创建测试连接*/
-    private boolean createConnectionTester()
+    /**
+     * 数据库断开后进入恢复模式，由共享后台维护调度器按退避时长触发，探测和重建连接在创建器中执行，不阻塞调度线程 <br><br>
+     * 1.从500毫秒开始按指数退避探测数据库，最长10秒，加随机抖动避免多个连接池同时探测，所有节点都在创建失败退避期时推迟到最早结束退避的节点可用时再探测，退避期内不新建连接<br>
+     * 2.探测到数据库恢复后立即并行分批重建最小连接数，第一个连接就绪即返回，其余连接后台继续创建<br>
+     * 3.连接池关闭时退出<br>
+     */
+    private void startRecover()
+    {
+        isRecovering = true;
+        recoverStartMs = System.currentTimeMillis();
+        recoverProbes = 0;
+        scheduleRecover(RECOVER_MIN_TIME);
+    }
+    
+    /** 按退避时长和节点退避结束时间中较晚的加随机抖动安排下一次恢复探测 */
+    private void scheduleRecover(final int backoff)
+    {
+        ScheduledThreadPoolExecutor executor = housekeeper;
+        if (!isRunning() || executor == null || executor.isShutdown())
+        {
+            isRecovering = false;
+            return;
+        }
+        
+        long delayMs = Math.max(backoff, getEndpointRetryDelayMs());
+        executor.schedule(new Runnable()
+        {
+            public void run()
+            {
+                boolean submitted = submitBlocking(recoverBusy, "恢复探测", new Runnable()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            recover(backoff);
+                        }
+                        catch (RuntimeException e)
+                        {// 异常时退出恢复模式，由下次监视检查重新判断
+                            isRecovering = false;
+                            throw e;
+                        }
+                    }
+                });
+                
+                if (!submitted)
+                    isRecovering = false;
+            }
+        }, delayMs + ThreadLocalRandom.current().nextInt(backoff / 4 + 1), TimeUnit.MILLISECONDS);
+    }
+    
+    /** 恢复探测一次，节点仍在退避期时推迟，仍断开时加倍退避后继续，恢复后重建连接并退出恢复模式 */
+    private void recover(int backoff)
     {
-        if (tester != null)
-        {// 如果已有测试器，先关闭
-            tester.shutdown();
-            tester = null;
+        if (!isRunning())
+        {
+            isRecovering = false;
+            return;
+        }
+        
+        if (getEndpointRetryDelayMs() > 0)
+        {// 所有节点都在创建失败退避期，不新建连接探测
+            scheduleRecover(backoff);
+            return;
+        }
+        
+        recoverProbes++;
+        if (tester.isDbBreak())
+        {
+            scheduleRecover(Math.min(backoff * 2, RECOVER_MAX_TIME));
+            return;
         }
         
+        isDbBreak = false;
+        breaker.onDbCheck(false);
+        log.info("数据库[%s]已恢复，[断开:%s毫秒,探测:%s次]，开始重建连接", id, System.currentTimeMillis() - recoverStartMs, recoverProbes);
+        
+        try
+        {
+            if (!createConnectionsParallel("恢复", recoverConcurrency, 1))
+                log.error("数据库[%s]恢复后重建连接失败，等待下次检查补足", id);
+        }
+        finally
+        {
+            isRecovering = false;
+        }
+    }
+    
+    /**创建测试连接*/
+    private boolean createConnectionTester()
+    {
         try
         {
             if (!JNDI.equalsIgnoreCase(driver))
@@ -284,247 +533,1159 @@ public class SQLDataSource extends Threadx implements DataSource, Runnable, Sign
         return true;
     }
     
-    /** 从池里获取一个连接，当连接耗尽时重复等待多少次 */
+    /** 获取一个连接，开启延迟绑定时返回逻辑连接，创建语句时才从池里借用物理连接，否则返回本次借用的句柄，重复关闭只归还一次 */
     public Connection getConnection() throws SQLException
     {
-        return getConnection(0);
+        if (isLazyBind)
+            return LogicalConnection.newProxy(this);
+        
+        return new ConnectionHandle(borrowConnection());
     }
     
-    /** 从池里获取一个连接 */
-    private Connection getConnection(int times) throws SQLException
+    /** 从池里获取一个连接，当连接耗尽时按先来先得等待，总等待时长为(重试次数+1)*最大等待时长 */
+    SQLConnection borrowConnection() throws SQLException
     {
-        // 第一步，先看是否能从连接池找到或新建
-        synchronized (connList)
+        long startNs = System.nanoTime();
+        long deadline = startNs + TimeUnit.MILLISECONDS.toNanos((long)outOfConnWaitTimeMs * (outOfConnRetryCount + 1));
+        
+        // 第一步，先无锁借用一个空闲连接
+        SQLConnection conn = connBag.borrow();
+        for (;;)
         {
-            // 1.1循环寻找一个有效的空闲连接，并对无效连接进行处理
-            for (Iterator<SQLConnection> it = connList.iterator(); it.hasNext();)
-            {
-                SQLConnection conn = it.next();
-                // 1.1.1 先判断是否活动中，活动中继续找下一个
-                if (conn.isActive())
-                    continue;
-                
-                if (conn.isClosed() || conn.isKeepOrIdleTimeout() || (isGetEffective && !conn.isConnectionAvailable()))
-                {// 1.1.2 已关闭、已超出时长或数目、和要求获取时检查连接连接不可用时，三种情况下销毁连接并从队列移除
-                    closedMap.put(conn, _EMPTY_);
-                    it.remove();
-                    continue;
+            if (conn == null)
+            {// 第二步，没有空闲连接时，未到最大连接数的预留名额异步新建，然后在等待队列上等到截止时间，释放或新建的连接直接移交给等待最久的线程
+                if (!addConnectionOnBorrow())
+                {// 需要新建连接但熔断器打开时不再等待，直接抛出异常
+                    throw new SQLException("数据库[" + id + "]不可用，连接池已熔断，请与管理员联系检查数据库是否正常工作!");
                 }
                 
-                // 1.1.3 找到一个空闲并可用的连接即返回
-                return conn.active();
+                long timeout = deadline - System.nanoTime();
+                if (timeout <= 0 || (conn = borrowWait(timeout)) == null)
+                    break;
             }
             
-            // 1.2如果没有空闲连接则检查是否达到最达连接数，没到最大值新建一个并返回
-            if (connList.size() < maxPoolSize)
-            {
-                SQLConnection conn = newConnection("获取");
-                if (conn != null)
-                {
-                    connList.add(conn);
-                    return conn.active();
-                }
+            if (isInvalidOnBorrow(conn))
+            {// 已关闭、已驱逐、已超出时长或数目、和要求获取时检查连接（后台检查未过期的不再检查）连接不可用时，四种情况下销毁连接并从队列移除，再取下一个
+                removeConnection(conn);
+                closer.close(conn);
+                conn = connBag.borrow();
+                continue;
             }
+            
+            // 找到一个空闲并可用的连接即返回
+            return borrowed(conn, startNs);
         }
         
-        // 第二步，如果没有空闲且连接达到最大数，则线程进入等待状态5秒，等待别的线程处理完释放连接
-        lock.lock(outOfConnWaitTimeMs);
-        
-        // 第三步，别的线程有释放或时间到达，检查是否有效线程，有则返回
-        synchronized (connList)
+        // 第三步，最后还是没有获取到连接则抛出异常，防止线程锁死在等待数据库连接上，导致发现不了问题
+        metrics.recordBorrowWait(System.nanoTime() - startNs);
+        metrics.recordTimeout();
+        breaker.onTimeout();
+        log.fatal("数据库连接[%s]连接耗尽，[max:%s,cur:%s,active:%s,wait:%s][抛出异常到业务层]", id, getMaxPoolSize(), getConnSize(), activeSize.get(), connBag.getWaiters());
+        throw new SQLException("数据库连接耗尽，请与管理员联系检查数据库是否正常工作和连接池配置是否足够!");
+    }
+    
+    /**
+     * 尝试从池里借用一个空闲并可用的连接，不等待，没有时未到最大连接数的预留名额异步新建后返回null，用于在多个连接池间选择时跳过已耗尽的
+     *
+     * @return  连接池连接，=null表示当前没有空闲连接
+     */
+    SQLConnection tryBorrow()
+    {
+        long startNs = System.nanoTime();
+        SQLConnection conn;
+        while ((conn = connBag.borrow()) != null)
         {
-            for (SQLConnection conn : connList)
-            {
-                if (conn.isActive())
-                    continue;
-                
-                return conn.active();
-            }
+            if (!isInvalidOnBorrow(conn))
+                return borrowed(conn, startNs);
+            
+            removeConnection(conn);
+            closer.close(conn);
         }
         
-        // 第四步，最后还是没有获取到连接则抛出异常，防止线程锁死在等待数据库连接上，导致发现不了问题
-        String fatal = "数据库连接[" + id + "]连接耗尽，[max:" + getMaxPoolSize() + ",cur:" + getConnSize() + ",active:" + activeSize.get() + "]";
-        if (times < outOfConnRetryCount)
-        {
-            log.fatal("%s[第%s]", fatal, times + 1);
-            return getConnection(times + 1);
-        }
-        else
-        {
-            log.fatal("%s[第%s][全部失败抛出异常到业务层]", fatal, times + 1);
-            throw new SQLException("数据库连接耗尽，请与管理员联系检查数据库是否正常工作和连接池配置是否足够!");
-        }
+        addConnectionOnBorrow();
+        return null;
     }
     
-    /** 释放一个连接到池内 */
-    public void release(SQLConnection conn)
+    /**
+     * 异步获取一个连接，不阻塞调用线程，适合虚拟线程或响应式调用方大量并发等待少量连接 <br><br>
+     * 1.有空闲并可用的连接时直接完成<br>
+     * 2.没有时未到最大连接数的预留名额异步新建，登记为异步等待者，归还或新建的连接直接移交完成，不再检查有效性<br>
+     * 3.到(重试次数+1)*最大等待时长仍未完成的置为失败<br>
+     *
+     * @return  异步获取结果，可阻塞等待或增加回调
+     */
+    public ConnectionFuture getConnectionAsync()
     {
-        if (conn == null)
-            return;
+        final long startNs = System.nanoTime();
+        final ConnectionFuture future = new ConnectionFuture(this, startNs);
         
-        if (conn.isClosed() || conn.isKeepOrIdleTimeout() || !conn.isConnectionAvailable())
-        {// 已关闭、已超出时长或数目、和要求释放时检查连接连接不可用时，三种情况下销毁连接并从队列移除
-            String connId = conn.getId();
-            conn.shutdown();
-            synchronized (connList)
+        // 第一步，先无锁借用一个空闲并可用的连接，借到直接完成
+        SQLConnection conn;
+        while ((conn = connBag.borrow()) != null)
+        {
+            if (!isInvalidOnBorrow(conn))
             {
-                connList.remove(conn);
+                future.complete(conn);
+                return future;
             }
-            conn = null;
-            log.info("释放关闭数据库连接[%s][%s]成功", id, connId);
-            return;
+            
+            removeConnection(conn);
+            closer.close(conn);
         }
-        // 连接没问题即设置为空闲并通知
-        conn.idle();
-        lock.unlock();
-    }
-    
-    /** 创建所有连接 */
-    private boolean createConnections(String type)
-    {
-        int num = minPoolSize - connList.size();
-        for (int i = 0; i < num; i++)
+        
+        ScheduledThreadPoolExecutor executor = housekeeper;
+        if (executor == null || executor.isShutdown())
         {
-            SQLConnection conn = newConnection(type);
-            if (conn == null)
-                return false;
-            
-            synchronized (connList)
-            {
-                connList.add(conn);
-            }
+            future.fail(new SQLException("数据库连接池[" + id + "]未启动或已关闭"));
+            return future;
         }
         
-        if (num > 0)
-        {// 有创建连接的解锁通知
-            lock.unlock();
+        // 第二步，预留名额异步新建，登记为异步等待者，归还或新建的连接直接移交完成
+        if (!addConnectionOnBorrow())
+        {// 需要新建连接但熔断器打开时不再等待，直接失败
+            future.fail(new SQLException("数据库[" + id + "]不可用，连接池已熔断，请与管理员联系检查数据库是否正常工作!"));
+            return future;
         }
         
-        return true;
-    }
-    
-    /** 删除所有连接 */
-    private void deleteConnections()
-    {
-        synchronized (connList)
+        connBag.borrowAsync(future);
+        if (future.isDone())
+            return future;
+        
+        // 第三步，到截止时间仍未完成则置为失败
+        executor.schedule(new Runnable()
         {
-            for (Iterator<SQLConnection> it = connList.iterator(); it.hasNext();)
+            public void run()
             {
-                SQLConnection conn = it.next();
-                conn.shutdown();
-                it.remove();
-                log.info("销毁关闭数据库连接[%s][%s]成功", id, conn.getId());
-                conn = null;
+                connBag.removeAsync(future);
+                if (!future.fail(new SQLException("数据库连接耗尽，请与管理员联系检查数据库是否正常工作和连接池配置是否足够!")))
+                    return;
+                
+                metrics.recordBorrowWait(System.nanoTime() - startNs);
+                metrics.recordTimeout();
+                breaker.onTimeout();
+                log.fatal("数据库连接[%s]连接耗尽，[max:%s,cur:%s,active:%s,wait:%s][异步获取失败]", id, getMaxPoolSize(), getConnSize(), activeSize.get(), connBag.getWaiters());
             }
-        }
+        }, (long)outOfConnWaitTimeMs * (outOfConnRetryCount + 1), TimeUnit.MILLISECONDS);
+        return future;
     }
     
-    /** 获取一个新的连接 */
-    protected SQLConnection newConnection(String desc)
+    /** 借到的连接是否不可用，已关闭、已驱逐、已到期和要求获取时检查（后台检查未过期的不再检查）不可用 */
+    private boolean isInvalidOnBorrow(SQLConnection conn)
     {
-        try
-        {
-            Connection conn = null;
-            if (JNDI.equalsIgnoreCase(driver))
-            {// JNDI
-                DataSource dataSource = (DataSource) new InitialContext().lookup(url);
-                if (dataSource == null)
-                    return null;
-                
-                dataSource.setLoginTimeout(10);
-                conn = dataSource.getConnection();
-            }
-            else
-            {// JDBC
-                DriverManager.setLoginTimeout(10);
-                conn = DriverManager.getConnection(url, user, pass);
-            }
-            
-            if (conn == null)
-            {
-                log.error("创建数据库连接[%s]失败，[%s]", id, desc);
-                return null;
-            }
-            
-            SQLConnection connection = new SQLConnection(this, conn);
-            if (level == 0 || level == 1 || level == 2 || level == 4 || level == 8)
-            {// 事务隔离等级，分5级，分别是0/1/2/4/8，越大越严格，其中0表示不支持事务，默认取决于数据库
-                connection.setTransactionIsolation(level);
-            }
-            
-            log.info("创建数据库连接[%s][%s]成功，[%s]", id, connection.getId(), desc);
-            return connection;
-        }
-        catch (SQLException e)
-        {
-            log.error("创建数据库连接[%s]时，发生异常：[%s]", id, e.getMessage());
-            return null;
-        }
-        catch (Exception e)
-        {
-            log.error("创建数据库连接[%s]时，发生异常：[%s]", id, e.getMessage());
-            return null;
-        }
+        return conn.isClosed() || conn.isEvicted() || isExpired(conn) || (isGetEffective && !conn.isVerified() && !conn.isConnectionAvailable());
     }
     
-    /**设置活跃数+1*/
-    void active()
+    /** 借到连接，记录等待时长并设置为运行中，借用线程为当前线程 */
+    SQLConnection borrowed(SQLConnection conn, long startNs)
     {
-        activeSize.getAndIncrement();
+        return borrowed(conn, startNs, Thread.currentThread(), newBorrowTrace());
     }
     
-    /**设置活跃数-1*/
-    void idle()
+    /** 借到连接，记录等待时长并设置为运行中，异步借用时借用线程和借用堆栈为请求方的 */
+    SQLConnection borrowed(SQLConnection conn, long startNs, Thread borrower, Throwable borrowTrace)
     {
-        activeSize.getAndDecrement();
+        long waitNs = System.nanoTime() - startNs;
+        metrics.recordBorrowWait(waitNs);
+        
+        AdaptiveSizer s = sizer;
+        if (s != null)
+            s.recordBorrow(waitNs);
+        
+        breaker.onBorrow();
+        return conn.active(borrower, borrowTrace);
     }
     
-    /***********************************/
-    // DataSource 参数信息，密码不支持获取
-    /***********************************/
-    
-    /** 获取当前连接数 */
-    public int getConnSize()
+    /**
+     * 检查连接是否已到期需要回收，到期连接按每个检查周期的回收数滚动回收，避免同一周期内大量重建，超过最大保持时长的连接不受限制
+     *
+     * @param conn  数据库连接
+     * @return      =true表示回收,=false表示未到期或推迟到下个周期回收
+     */
+    private boolean isExpired(SQLConnection conn)
     {
-        return connList.size();
+        if (!conn.isKeepOrIdleTimeout())
+            return false;
+        
+        if (maxRetirePerCheck <= 0 || conn.isKeepTimeout())
+            return true;
+        
+        long now = System.currentTimeMillis();
+        if (now - retireWindowMs >= checkTimeMs)
+        {// 进入新的检查周期，重新计数，并发时多算或少算一两个不影响平滑效果
+            retireWindowMs = now;
+            retireCount.set(0);
+        }
+        
+        return retireCount.incrementAndGet() <= maxRetirePerCheck;
     }
     
-    /** 获取当前连接活跃数 */
-    public int getConnActiveSize()
+    /** 在等待队列上等待一个连接，中断时恢复中断标志并抛出异常 */
+    private SQLConnection borrowWait(long timeoutNanos) throws SQLException
     {
-        return activeSize.get();
+        try
+        {
+            return connBag.borrow(timeoutNanos);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SQLException("等待数据库连接[" + id + "]时被中断", e);
+        }
     }
     
-    /** 判断数据库是否断开 */
-    public boolean isDbBreak()
+    /** 创建连接异步创建器，单线程顺序创建，空闲60秒后线程退出，线程为守护线程 */
+    private void createConnectionCreator()
     {
-        return tester.isDbBreak();
+        if (creator != null)
+        {// 如果已有创建器先关闭，未执行的创建任务丢弃，名额按当前连接数重置
+            creator.shutdownNow();
+            totalSize.set(connBag.size());
+        }
+        
+        creator = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), newThreadFactory("creator"));
+        creator.allowCoreThreadTimeOut(true);
     }
     
-    /** 下一个连接序号 */
-    public String nextSequence()
+    /** 获取共享后台维护调度器，安排本连接池的周期任务，首次执行时间随机错开 */
+    private void createHousekeeper()
     {
-        return sequence.nextString();
+        if (housekeeper == null)
+            housekeeper = Housekeeper.acquire();
+        
+        scheduleValidation();
+        scheduleLeakDetection();
+        scheduleAdaptive();
+        scheduleStatementTimeout();
     }
     
-    public String getId()
+    /** 取消本连接池的周期任务，释放共享后台维护调度器 */
+    private void releaseHousekeeper()
     {
-        return id;
+        for (ScheduledFuture<?> task : new ScheduledFuture<?>[]{validationTask, leakTask, adaptiveTask, stmtTimeoutTask})
+        {
+            if (task != null)
+                task.cancel(false);
+        }
+        validationTask = leakTask = adaptiveTask = stmtTimeoutTask = null;
+        sizer = null;
+        
+        if (housekeeper != null)
+        {
+            housekeeper = null;
+            Housekeeper.release();
+        }
     }
     
-    public String getDriver()
+    /** 按后台检查间隔重新安排空闲连接后台检查任务，间隔<=0时取消 */
+    private void scheduleValidation()
     {
-        return driver;
+        if (validationTask != null)
+        {
+            validationTask.cancel(false);
+            validationTask = null;
+        }
+        
+        if (housekeeper == null || housekeeper.isShutdown() || validationIntervalMs <= 0)
+            return;
+        
+        validationTask = Housekeeper.schedule(housekeeper, new Runnable()
+        {
+            public void run()
+            {
+                submitBlocking(validationBusy, "后台检查空闲连接", new Runnable()
+                {
+                    public void run()
+                    {
+                        validateIdleConnections();
+                    }
+                });
+            }
+        }, validationIntervalMs);
     }
     
-    public String getUrl()
+    /** 后台检查空闲连接，逐个预留后直接检查，不按最近使用跳过，检查时间在本周期内的跳过，不可用的在借用前销毁，可用的记录检查时间 */
+    private void validateIdleConnections()
     {
-        return url;
+        for (SQLConnection conn : connBag.values())
+        {
+            if (System.currentTimeMillis() - conn.getVerifiedTimeMs() < validationIntervalMs)
+                continue;
+            
+            // 活动中的连接不检查，预留成功后借用者不会再取到该连接
+            if (!connBag.reserve(conn))
+                continue;
+            
+            if (conn.isClosed() || !conn.validate())
+            {
+                removeConnection(conn);
+                closer.close(conn);
+                log.info("后台检查关闭数据库连接[%s][%s]成功", id, conn.getId());
+                continue;
+            }
+            
+            connBag.unreserve(conn);
+        }
+        
+        // 销毁后补足最小连接数
+        while (addConnectionAsync("检查", minPoolSize))
+        {// 逐个预留名额直到最小连接数
+        }
     }
     
-    public String getUser()
+    /** 按泄漏阈值重新安排连接泄漏检测任务，检测间隔为阈值的1/4，最短1秒，阈值<=0时取消 */
+    private void scheduleLeakDetection()
     {
-        return user;
+        if (leakTask != null)
+        {
+            leakTask.cancel(false);
+            leakTask = null;
+        }
+        
+        if (housekeeper == null || housekeeper.isShutdown() || leakDetectionThresholdMs <= 0)
+            return;
+        
+        long intervalMs = Math.max(leakDetectionThresholdMs / 4, 1000);
+        leakTask = Housekeeper.schedule(housekeeper, new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    detectLeaks();
+                }
+                catch (Throwable e)
+                {// 异常不能抛出，否则后续不再执行
+                    log.error("数据库[%s]检测连接泄漏异常", e, id);
+                }
+            }
+        }, intervalMs);
+    }
+    
+    /** 检测借出超过泄漏阈值的连接，每次借用只报告一次，要求回收时关闭物理连接并移出连接池 */
+    private void detectLeaks()
+    {
+        long now = System.currentTimeMillis();
+        for (SQLConnection conn : connBag.values())
+        {
+            Thread thread = conn.getBorrowThread();
+            if (thread == null || !conn.isActive() || conn.isLeakReported())
+                continue;
+            
+            long holdTimeMs = now - conn.getActiveTimeMs();
+            if (holdTimeMs <= leakDetectionThresholdMs)
+                continue;
+            
+            conn.setLeakReported();
+            leakCount.incrementAndGet();
+            
+            Throwable trace = conn.getBorrowTrace();
+            if (trace != null)
+                log.warn("数据库连接[%s][%s]疑似泄漏，已被线程[%s]占用[%s]毫秒，借用堆栈如下", trace, id, conn.getId(), thread.getName(), holdTimeMs);
+            else
+                log.warn("数据库连接[%s][%s]疑似泄漏，已被线程[%s]占用[%s]毫秒，未采样借用堆栈", id, conn.getId(), thread.getName(), holdTimeMs);
+            
+            if (!isLeakReclaim)
+                continue;
+            
+            // 先关闭再移出，占用者释放时发现已关闭不会再归还到池中
+            closer.close(conn);
+            removeConnection(conn);
+            conn.idle();
+            log.warn("数据库连接[%s][%s]泄漏已强制回收", id, conn.getId());
+        }
+    }
+    
+    /** 启动语句执行硬超时检查任务，按硬上限的1/4间隔检查，最短1秒，未开启时只取消已有任务 */
+    private void scheduleStatementTimeout()
+    {
+        if (stmtTimeoutTask != null)
+        {
+            stmtTimeoutTask.cancel(false);
+            stmtTimeoutTask = null;
+        }
+        
+        if (housekeeper == null || housekeeper.isShutdown() || stmtHardTimeoutMs <= 0)
+            return;
+        
+        long intervalMs = Math.max(stmtHardTimeoutMs / 4, 1000);
+        stmtTimeoutTask = Housekeeper.schedule(housekeeper, new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    cancelTimeoutStatements();
+                }
+                catch (Throwable e)
+                {// 异常不能抛出，否则后续不再执行
+                    log.error("数据库[%s]检查语句执行超时异常", e, id);
+                }
+            }
+        }, intervalMs);
+    }
+    
+    /** 检查执行超过硬上限的语句，先取消语句，取消后下次检查仍在执行的中止连接，取消和中止都在关闭器线程中执行，不阻塞调度线程 */
+    private void cancelTimeoutStatements()
+    {
+        long now = System.currentTimeMillis();
+        for (final SQLConnection conn : connBag.values())
+        {
+            final Statement stmt = conn.getExecStatement();
+            if (stmt == null)
+                continue;
+            
+            long execTimeMs = now - conn.getExecStartMs();
+            if (execTimeMs <= stmtHardTimeoutMs)
+                continue;
+            
+            if (!conn.isExecCancelled())
+            {
+                conn.setExecCancelled();
+                stmtCancels.incrementAndGet();
+                log.warn("数据库连接[%s][%s]语句已执行[%s]毫秒，超过硬上限，取消执行", id, conn.getId(), execTimeMs);
+                
+                closer.execute(new Runnable()
+                {
+                    public void run()
+                    {// 部分驱动取消时需要新建连接发送取消命令，可能阻塞
+                        try
+                        {
+                            stmt.cancel();
+                        }
+                        catch (SQLException e)
+                        {
+                            log.error("数据库连接[%s][%s]取消语句失败[%s]", id, conn.getId(), e.getMessage());
+                        }
+                    }
+                });
+                continue;
+            }
+            
+            log.error("数据库连接[%s][%s]语句取消后仍在执行[%s]毫秒，中止连接", id, conn.getId(), execTimeMs);
+            try
+            {
+                conn.abort(closer);
+            }
+            catch (SQLException e)
+            {
+                log.error("数据库连接[%s][%s]中止失败[%s]", id, conn.getId(), e.getMessage());
+            }
+        }
+    }
+    
+    /** 按自适应配置重新安排自适应大小调整任务，未开启时取消 */
+    private void scheduleAdaptive()
+    {
+        if (adaptiveTask != null)
+        {
+            adaptiveTask.cancel(false);
+            adaptiveTask = null;
+        }
+        
+        if (housekeeper == null || housekeeper.isShutdown() || !isAdaptive)
+        {
+            sizer = null;
+            return;
+        }
+        
+        sizer = new AdaptiveSizer((adaptiveWindow * 1000 + ADAPTIVE_SAMPLE_TIME - 1) / ADAPTIVE_SAMPLE_TIME);
+        adaptiveTask = Housekeeper.schedule(housekeeper, new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    adjustPoolSize();
+                }
+                catch (Throwable e)
+                {// 异常不能抛出，否则后续不再执行
+                    log.error("数据库[%s]自适应调整连接数异常", e, id);
+                }
+            }
+        }, ADAPTIVE_SAMPLE_TIME);
+    }
+    
+    /** 按自适应目标连接数调整，不足时异步扩容，超出时销毁整个窗口内都未使用过的空闲连接，不低于最小连接数 */
+    private void adjustPoolSize()
+    {
+        AdaptiveSizer s = sizer;
+        if (s == null || isDbBreak)
+            return;
+        
+        int target = s.sample(activeSize.get(), connBag.getWaiters(), adaptiveHeadroom, minPoolSize, maxPoolSize);
+        
+        // 1.扩容，提前创建到目标连接数
+        while (addConnectionAsync("自适应", target))
+        {// 逐个预留名额直到目标连接数
+        }
+        
+        // 2.缩容，整个窗口内都未使用过的空闲连接才销毁
+        int surplus = totalSize.get() - target;
+        if (surplus <= 0)
+            return;
+        
+        long now = System.currentTimeMillis();
+        long quietMs = adaptiveWindow * 1000L;
+        for (SQLConnection conn : connBag.values())
+        {
+            if (surplus <= 0)
+                break;
+            
+            if (conn.isActive() || now - conn.getIdleTimeMs() < quietMs)
+                continue;
+            
+            if (destroyIdleConnection(conn, "自适应"))
+                surplus--;
+        }
+    }
+    
+    /** 按采样生成本次借用的借用堆栈，未开启泄漏检测或本次未采样时返回null */
+    Throwable newBorrowTrace()
+    {
+        if (leakDetectionThresholdMs <= 0 || leakTraceSampling <= 0)
+            return null;
+        
+        if (leakTraceSampling > 1 && ThreadLocalRandom.current().nextInt(leakTraceSampling) != 0)
+            return null;
+        
+        return new Throwable("数据库连接[" + id + "]借用堆栈");
+    }
+    
+    /** 移除一个异步等待者，异步获取取消时调用 */
+    void removeAsync(ConnectionFuture future)
+    {
+        connBag.removeAsync(future);
+    }
+    
+    /** 创建连接池内部线程工厂，线程名以数据库线程名为前缀，线程为守护线程 */
+    private ThreadFactory newThreadFactory(final String name)
+    {
+        return new ThreadFactory()
+        {
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, getThreadName() + "-" + name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+    
+    /** 释放一个连接到池内，先结束本次借用，未借出或本次借用已释放（重复关闭、泄漏已回收）的不再处理 */
+    public void release(SQLConnection conn)
+    {
+        if (conn == null || !conn.idle())
+            return;
+        
+        if (conn.isBroken() || conn.isClosed() || conn.isEvicted() || totalSize.get() > maxPoolSize || isExpired(conn) || (isChkConnOnRelease && !conn.isConnectionAvailable()) || !conn.resetSession())
+        {// 执行时已损坏、已关闭、已驱逐、超出最大连接数、已超出时长或数目、要求释放时检查连接连接不可用和重置会话属性失败时，七种情况下销毁连接并从队列移除，正常连接不做网络检查，只重置借用者改过的会话属性后归还
+            String connId = conn.getId();
+            closer.close(conn);
+            removeConnection(conn);
+            conn = null;
+            log.info("释放关闭数据库连接[%s][%s]成功", id, connId);
+            return;
+        }
+        // 连接没问题即设置为空闲并通知
+        connBag.requite(conn);
+    }
+    
+    /** 创建所有连接 */
+    private boolean createConnections(String type)
+    {
+        while (reserveSlot(minPoolSize))
+        {
+            SQLConnection conn = newConnection(type);
+            if (conn == null)
+            {
+                totalSize.decrementAndGet();
+                return false;
+            }
+            
+            connBag.add(conn);
+        }
+        
+        return true;
+    }
+    
+    /**
+     * 并行创建连接到最小连接数，每批并行数个，达到就绪连接数即返回，其余连接由预热线程在后台继续创建
+     *
+     * @param type          创建描述
+     * @param concurrency   并行创建的线程数
+     * @param readyQuorum   就绪连接数，<=0表示等最小连接数全部创建
+     * @return              =true表示已就绪，=false表示创建失败的连接过多，无法达到就绪连接数
+     */
+    private boolean createConnectionsParallel(final String type, int concurrency, int readyQuorum)
+    {
+        int num = minPoolSize - totalSize.get();
+        int quorum = (readyQuorum <= 0 || readyQuorum > num) ? num : readyQuorum;
+        if (num <= 0 || (concurrency <= 1 && quorum == num))
+        {// 不需要并行和提前就绪的，按顺序创建
+            return createConnections(type);
+        }
+        
+        final int allowFailed = num - quorum;
+        final CountDownLatch ready = new CountDownLatch(quorum);
+        final AtomicInteger failed = new AtomicInteger(0);
+        
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), newThreadFactory("init"));
+        for (int i = 0; i < num && reserveSlot(minPoolSize); i++)
+        {
+            executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    SQLConnection conn = newConnection(type);
+                    if (conn == null)
+                    {// 创建失败释放名额，失败数超出允许值时直接唤醒等待者
+                        totalSize.decrementAndGet();
+                        if (failed.incrementAndGet() > allowFailed)
+                        {
+                            while (ready.getCount() > 0)
+                                ready.countDown();
+                        }
+                        return;
+                    }
+                    
+                    connBag.add(conn);
+                    ready.countDown();
+                }
+            });
+        }
+        
+        // 已提交的任务继续执行完后线程退出
+        executor.shutdown();
+        
+        try
+        {
+            ready.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+            return false;
+        }
+        
+        if (failed.get() > allowFailed)
+        {
+            executor.shutdownNow();
+            log.error("数据库[%s]%s连接失败，[%s/%s]个连接创建失败", id, type, failed.get(), num);
+            return false;
+        }
+        
+        log.info("数据库[%s]%s连接就绪，[并行:%s,就绪:%s,最小:%s]", id, type, concurrency, quorum, num);
+        return true;
+    }
+    
+    /**
+     * 异步新建一个连接，先预留名额，再由创建器在连接池锁外创建，创建成功后直接移交给等待最久的借用者
+     *
+     * @param desc      创建描述
+     * @param limit     连接数上限，补足时为最小连接数，获取时为最大连接数
+     * @return          =true表示已提交创建，=false表示已达上限
+     */
+    private boolean addConnectionAsync(String desc, int limit)
+    {
+        if (creator == null || creator.isShutdown() || !reserveSlot(limit))
+            return false;
+        
+        createAsync(desc);
+        return true;
+    }
+    
+    /**
+     * 获取连接时没有空闲连接，未到最大连接数的预留名额异步新建，只有需要新建连接时才经过熔断器
+     *
+     * @return  =true表示已新建或不需要新建，=false表示熔断器拒绝新建，已释放名额
+     */
+    private boolean addConnectionOnBorrow()
+    {
+        if (creator == null || creator.isShutdown() || !reserveSlot(maxPoolSize))
+            return true;
+        
+        if (!breaker.allow())
+        {
+            totalSize.decrementAndGet();
+            return false;
+        }
+        
+        createAsync("获取");
+        return true;
+    }
+    
+    /** 在创建线程中新建连接，名额已预留，创建失败释放名额 */
+    private void createAsync(final String desc)
+    {
+        creator.execute(new Runnable()
+        {
+            public void run()
+            {
+                SQLConnection conn = newConnection(desc);
+                if (conn == null)
+                {// 创建失败释放名额
+                    totalSize.decrementAndGet();
+                    return;
+                }
+                
+                connBag.add(conn);
+            }
+        });
+    }
+    
+    /** 预留一个连接名额，连接总数达到上限时返回false */
+    private boolean reserveSlot(int limit)
+    {
+        for (;;)
+        {
+            int size = totalSize.get();
+            if (size >= limit)
+                return false;
+            
+            if (totalSize.compareAndSet(size, size + 1))
+                return true;
+        }
+    }
+    
+    /** 从池中移除一个连接并释放名额 */
+    private void removeConnection(SQLConnection conn)
+    {
+        if (connBag.remove(conn))
+        {
+            totalSize.decrementAndGet();
+            metrics.recordDestruction();
+        }
+    }
+    
+    /** 预留一个空闲连接给数据库检测使用，没有空闲连接时返回null */
+    SQLConnection reserveIdleConnection()
+    {
+        for (SQLConnection conn : connBag.values())
+        {
+            if (!conn.isClosed() && connBag.reserve(conn))
+                return conn;
+        }
+        
+        return null;
+    }
+    
+    /** 归还数据库检测预留的连接，可用的记录检查时间后恢复为空闲，不可用的销毁 */
+    void unreserveConnection(SQLConnection conn, boolean isAvailable)
+    {
+        if (isAvailable)
+        {
+            conn.verified();
+            connBag.unreserve(conn);
+            return;
+        }
+        
+        removeConnection(conn);
+        closer.close(conn);
+        log.info("检测关闭数据库连接[%s][%s]成功", id, conn.getId());
+    }
+    
+    /** 数据库检测新建的可用连接交给连接池，有空闲名额且连接池未在关闭时接收，否则关闭 */
+    void offerConnection(SQLConnection conn)
+    {
+        if (!isClosing && reserveSlot(maxPoolSize))
+        {
+            connBag.add(conn);
+            return;
+        }
+        
+        closer.close(conn);
+    }
+    
+    /** 删除所有连接 */
+    private void deleteConnections()
+    {
+        for (SQLConnection conn : connBag.clear())
+        {
+            totalSize.decrementAndGet();
+            metrics.recordDestruction();
+            closer.close(conn);
+            log.info("销毁关闭数据库连接[%s][%s]成功", id, conn.getId());
+        }
+    }
+    
+    /** 获取一个新的连接，从最健康的节点开始，失败时依次尝试其他节点，都失败返回null */
+    protected SQLConnection newConnection(String desc)
+    {
+        Endpoint[] eps = endpoints;
+        boolean[] tried = new boolean[eps.length];
+        for (int i = 0; i < eps.length; i++)
+        {
+            Endpoint endpoint = selectEndpoint(eps, tried);
+            tried[endpoint.getIndex()] = true;
+            
+            SQLConnection conn = newConnection(endpoint, desc);
+            if (conn != null)
+            {
+                breaker.onCreateSuccess();
+                return conn;
+            }
+        }
+        
+        breaker.onCreateFailure();
+        return null;
+    }
+    
+    /** 所有节点都在创建失败退避期时，返回最早结束退避的剩余毫秒数，有可用节点时返回0 */
+    long getEndpointRetryDelayMs()
+    {
+        long now = System.currentTimeMillis();
+        long delayMs = Long.MAX_VALUE;
+        for (Endpoint endpoint : endpoints)
+        {
+            if (!endpoint.isQuarantined(now))
+                return 0;
+            
+            delayMs = Math.min(delayMs, endpoint.getRetryTimeMs() - now);
+        }
+        
+        return Math.max(delayMs, 0);
+    }
+    
+    /** 选择创建连接的节点，需要探测的节点优先，其次评分最小的，都在退避期时选退避最先结束的 */
+    private Endpoint selectEndpoint(Endpoint[] eps, boolean[] tried)
+    {
+        long now = System.currentTimeMillis();
+        Endpoint best = null;
+        Endpoint fallback = null;
+        for (Endpoint endpoint : eps)
+        {
+            if (tried[endpoint.getIndex()])
+                continue;
+            
+            if (endpoint.isQuarantined(now))
+            {
+                if (fallback == null || endpoint.getRetryTimeMs() < fallback.getRetryTimeMs())
+                    fallback = endpoint;
+                continue;
+            }
+            
+            if (endpoint.claimProbe(now))
+                return endpoint;
+            
+            if (best == null || endpoint.score() < best.score())
+                best = endpoint;
+        }
+        
+        return best != null ? best : fallback;
+    }
+    
+    /** 在指定节点上创建一个新的连接，并记录节点的健康状况 */
+    private SQLConnection newConnection(Endpoint endpoint, String desc)
+    {
+        long startNs = System.nanoTime();
+        SQLConnection connection = null;
+        endpoint.connecting(System.currentTimeMillis());
+        try
+        {
+            Connection conn = null;
+            if (JNDI.equalsIgnoreCase(driver))
+            {// JNDI
+                DataSource dataSource = (DataSource) new InitialContext().lookup(endpoint.getUrl());
+                if (dataSource == null)
+                    return null;
+                
+                dataSource.setLoginTimeout(10);
+                conn = dataSource.getConnection();
+            }
+            else
+            {// JDBC
+                DriverManager.setLoginTimeout(10);
+                conn = DriverManager.getConnection(endpoint.getUrl(), user, pass);
+            }
+            
+            if (conn == null)
+            {
+                log.error("创建数据库连接[%s][节点%s]失败，[%s]", id, endpoint.getIndex(), desc);
+                return null;
+            }
+            
+            SQLConnection sqlConn = new SQLConnection(this, conn);
+            try
+            {
+                if (level == 0 || level == 1 || level == 2 || level == 4 || level == 8)
+                {// 事务隔离等级，分5级，分别是0/1/2/4/8，越大越严格，其中0表示不支持事务，默认取决于数据库，和数据库默认相同时不再设置
+                    sqlConn.setDefaultTransactionIsolation(level);
+                }
+                
+                if (isReadOnly)
+                {// 只读连接池，借用时设置只读不再发送到数据库
+                    sqlConn.setDefaultReadOnly(true);
+                }
+                
+                if (networkTimeoutMs > 0)
+                {// 网络超时，防止网络故障时读取一直阻塞
+                    sqlConn.setDefaultNetworkTimeout(networkTimeoutMs);
+                }
+            }
+            catch (SQLException e)
+            {
+                closer.close(sqlConn);
+                throw e;
+            }
+            
+            connection = sqlConn;
+            
+            log.info("创建数据库连接[%s][%s]成功，[%s]", id, connection.getId(), desc);
+            return connection;
+        }
+        catch (SQLException e)
+        {
+            log.error("创建数据库连接[%s][节点%s]时，发生异常：[%s]", id, endpoint.getIndex(), e.getMessage());
+            return null;
+        }
+        catch (Exception e)
+        {
+            log.error("创建数据库连接[%s][节点%s]时，发生异常：[%s]", id, endpoint.getIndex(), e.getMessage());
+            return null;
+        }
+        finally
+        {
+            long elapsedNs = System.nanoTime() - startNs;
+            metrics.recordCreate(elapsedNs, connection != null);
+            if (connection != null)
+                endpoint.recordSuccess(TimeUnit.NANOSECONDS.toMicros(elapsedNs));
+            else
+                endpoint.recordFailure(TimeUnit.NANOSECONDS.toMicros(elapsedNs), System.currentTimeMillis());
+        }
+    }
+    
+    /** 异步关闭连接，立即标记已关闭，物理连接由关闭器关闭 */
+    void closeConnection(SQLConnection conn)
+    {
+        closer.close(conn);
+    }
+    
+    /** 移出已中止的连接并释放名额，物理连接已由中止异步关闭 */
+    void discard(SQLConnection conn)
+    {
+        removeConnection(conn);
+        conn.idle();
+        log.warn("数据库连接[%s][%s]已中止并移出连接池", id, conn.getId());
+    }
+    
+    /** 获取连接的会话属性默认值，取池内任一连接创建时读取的值，池内没有连接或默认值未知时返回null */
+    Object getSessionDefault(int bit)
+    {
+        SQLConnection conn = connBag.peek();
+        return conn == null ? null : conn.getSessionDefault(bit);
+    }
+    
+    /**设置活跃数+1*/
+    void active()
+    {
+        int active = activeSize.incrementAndGet();
+        
+        AdaptiveSizer s = sizer;
+        if (s != null)
+            s.recordActive(active);
+    }
+    
+    /**设置活跃数-1，并记录本次占用时长*/
+    void idle(long holdTimeMs)
+    {
+        activeSize.getAndDecrement();
+        metrics.recordHold(holdTimeMs);
+    }
+    
+    /**语句缓存命中数+1*/
+    void stmtCacheHit()
+    {
+        stmtCacheHits.getAndIncrement();
+    }
+    
+    /**语句缓存未命中数+1*/
+    void stmtCacheMiss()
+    {
+        stmtCacheMisses.getAndIncrement();
+    }
+    
+    /**语句缓存淘汰数+1*/
+    void stmtCacheEviction()
+    {
+        stmtCacheEvictions.getAndIncrement();
+    }
+    
+    /***********************************/
+    // DataSource 参数信息，密码不支持获取
+    /***********************************/
+    
+    /** 获取当前连接数 */
+    public int getConnSize()
+    {
+        return connBag.size();
+    }
+    
+    /** 获取当前连接活跃数 */
+    public int getConnActiveSize()
+    {
+        return activeSize.get();
+    }
+    
+    /** 获取语句缓存命中数 */
+    public long getStmtCacheHits()
+    {
+        return stmtCacheHits.get();
+    }
+    
+    /** 获取语句缓存未命中数 */
+    public long getStmtCacheMisses()
+    {
+        return stmtCacheMisses.get();
+    }
+    
+    /** 获取语句缓存淘汰数 */
+    public long getStmtCacheEvictions()
+    {
+        return stmtCacheEvictions.get();
+    }
+    
+    /** 获取连接池统计指标，实时变化 */
+    public PoolMetrics getMetrics()
+    {
+        return metrics;
+    }
+    
+    /**
+     * 获取连接池统计指标快照，定时调用并清零可得到每个周期的指标
+     *
+     * @param reset 是否清零
+     * @return      统计指标快照
+     */
+    public PoolMetrics snapshotMetrics(boolean reset)
+    {
+        return metrics.snapshot(reset);
+    }
+    
+    /** 获取等待连接的线程数 */
+    public int getConnWaitSize()
+    {
+        return connBag.getWaiters();
+    }
+    
+    /** 获取统计指标描述 */
+    public String getMetricsInfo()
+    {
+        return metrics.toString();
+    }
+    
+    /** 获取所有连接状态，每个连接一行，含编号、已保持秒数、已空闲秒数和是否使用中 */
+    public String[] getConnStates()
+    {
+        long now = System.currentTimeMillis();
+        List<SQLConnection> list = connBag.values();
+        String[] states = new String[list.size()];
+        for (int i = 0; i < states.length; i++)
+        {
+            SQLConnection conn = list.get(i);
+            states[i] = new StringBuilder(conn.getId()).append("[")
+                    .append("keep:").append((now - conn.getKeepTimeMs()) / 1000).append(",")
+                    .append("idle:").append(conn.isActive() ? 0 : (now - conn.getIdleTimeMs()) / 1000).append(",")
+                    .append("active:").append(conn.isActive()).append("]")
+                    .toString();
+        }
+        return states;
+    }
+    
+    /** 获取各连接节点的健康状况，每个节点一行，含平均创建耗时、连续失败次数和正在创建数 */
+    public String[] getEndpointStates()
+    {
+        Endpoint[] eps = endpoints;
+        String[] states = new String[eps.length];
+        for (int i = 0; i < states.length; i++)
+        {
+            states[i] = eps[i].toString();
+        }
+        return states;
+    }
+    
+    /** 获取自适应目标连接数，未开启时返回当前连接数 */
+    public int getAdaptiveTarget()
+    {
+        AdaptiveSizer s = sizer;
+        return s == null ? getConnSize() : s.getLastTarget();
+    }
+    
+    /** 获取因执行超过硬上限取消或中止的语句数 */
+    public long getStmtCancels()
+    {
+        return stmtCancels.get();
+    }
+    
+    /** 获取等待关闭和正在关闭的连接数 */
+    public int getPendingCloses()
+    {
+        return closer.getPending();
+    }
+    
+    /** 获取关闭超过关闭超时时长的连接数 */
+    public long getSlowCloses()
+    {
+        return closer.getSlowCount();
+    }
+    
+    /** 获取检测到的连接泄漏数 */
+    public long getLeakCount()
+    {
+        return leakCount.get();
+    }
+    
+    /** 判断数据库是否断开，恢复模式期间由恢复探测按退避检查，直接返回最近一次结果，不再新建连接 */
+    public boolean isDbBreak()
+    {
+        if (isRecovering)
+            return isDbBreak;
+        
+        return tester.isDbBreak();
+    }
+    
+    /** 判断数据库是否可用，取监视任务最近一次检查的结果和熔断器状态，不做网络检查，用于路由时快速判断 */
+    public boolean isDbAvailable()
+    {
+        return isRunning() && !isDbBreak && !breaker.isOpen();
+    }
+    
+    /** 获取熔断器状态，CLOSED/OPEN/HALF_OPEN */
+    public String getBreakerState()
+    {
+        return breaker.getStateName();
+    }
+    
+    /** 获取熔断器拒绝的获取连接数 */
+    public long getBreakerRejects()
+    {
+        return breaker.getRejects();
+    }
+    
+    /** 下一个连接序号 */
+    public String nextSequence()
+    {
+        return sequence.nextString();
+    }
+    
+    public String getId()
+    {
+        return id;
+    }
+    
+    public String getDriver()
+    {
+        return driver;
+    }
+    
+    public String getUrl()
+    {
+        return url;
+    }
+    
+    public String getUser()
+    {
+        return user;
     }
     
     public int getMinPoolSize()
@@ -547,6 +1708,16 @@ public class SQLDataSource extends Threadx implements DataSource, Runnable, Sign
         return maxIdleTimeMs;
     }
     
+    public int getMaxKeepTimeJitter()
+    {
+        return maxKeepTimeJitter;
+    }
+    
+    public int getMaxRetirePerCheck()
+    {
+        return maxRetirePerCheck;
+    }
+    
     public boolean isChkConnOnTimer()
     {
         return isChkConnOnTimer;
@@ -557,6 +1728,121 @@ public class SQLDataSource extends Threadx implements DataSource, Runnable, Sign
         return isGetEffective;
     }
     
+    public boolean isChkConnOnRelease()
+    {
+        return isChkConnOnRelease;
+    }
+    
+    public ConnectionValidator getValidator()
+    {
+        return validator;
+    }
+    
+    public int getValidationTimeout()
+    {
+        return validationTimeout;
+    }
+    
+    public long getValidationSkipTimeMs()
+    {
+        return validationSkipTimeMs;
+    }
+    
+    public long getValidationIntervalMs()
+    {
+        return validationIntervalMs;
+    }
+    
+    public boolean isAdaptive()
+    {
+        return isAdaptive;
+    }
+    
+    public boolean isLazyBind()
+    {
+        return isLazyBind;
+    }
+    
+    public int getAdaptiveWindow()
+    {
+        return adaptiveWindow;
+    }
+    
+    public int getAdaptiveHeadroom()
+    {
+        return adaptiveHeadroom;
+    }
+    
+    public long getLeakDetectionThresholdMs()
+    {
+        return leakDetectionThresholdMs;
+    }
+    
+    public int getLeakTraceSampling()
+    {
+        return leakTraceSampling;
+    }
+    
+    public boolean isLeakReclaim()
+    {
+        return isLeakReclaim;
+    }
+    
+    public int getStmtCacheSize()
+    {
+        return stmtCacheSize;
+    }
+    
+    public int getInitConcurrency()
+    {
+        return initConcurrency;
+    }
+    
+    public int getInitQuorum()
+    {
+        return initQuorum;
+    }
+    
+    public int getRecoverConcurrency()
+    {
+        return recoverConcurrency;
+    }
+    
+    public int getPoolStripes()
+    {
+        return poolStripes;
+    }
+    
+    public long getCheckTimeMs()
+    {
+        return checkTimeMs;
+    }
+    
+    public int getCloseTimeoutMs()
+    {
+        return closer.getCloseTimeoutMs();
+    }
+    
+    public int getQueryTimeout()
+    {
+        return queryTimeout;
+    }
+    
+    public int getNetworkTimeoutMs()
+    {
+        return networkTimeoutMs;
+    }
+    
+    public long getStmtHardTimeoutMs()
+    {
+        return stmtHardTimeoutMs;
+    }
+    
+    public boolean isReadOnly()
+    {
+        return isReadOnly;
+    }
+    
     
     /***********************************/
     // DataSource 支持动态修改的参数
@@ -572,16 +1858,28 @@ public class SQLDataSource extends Threadx implements DataSource, Runnable, Sign
         this.maxPoolSize = maxPoolSize;
     }
     
+    /** 设置最大保持时长，单位秒 */
     public void setMaxKeepTime(long maxKeepTime)
     {
         this.maxKeepTimeMs = maxKeepTime * 1000;
     }
     
+    /** 设置最大空闲时长，单位秒 */
     public void setMaxIdleTime(long maxIdleTime)
     {
         this.maxIdleTimeMs = maxIdleTime * 1000;
     }
     
+    public void setMaxKeepTimeJitter(int maxKeepTimeJitter)
+    {
+        this.maxKeepTimeJitter = Math.max(0, Math.min(maxKeepTimeJitter, 100));
+    }
+    
+    public void setMaxRetirePerCheck(int maxRetirePerCheck)
+    {
+        this.maxRetirePerCheck = maxRetirePerCheck;
+    }
+    
     public void setChkConnOnTimer(boolean isChkConnOnTimer)
     {
         this.isChkConnOnTimer = isChkConnOnTimer;
@@ -592,6 +1890,319 @@ public class SQLDataSource extends Threadx implements DataSource, Runnable, Sign
         this.isGetEffective = isGetEffective;
     }
     
+    public void setChkConnOnRelease(boolean isChkConnOnRelease)
+    {
+        this.isChkConnOnRelease = isChkConnOnRelease;
+    }
+    
+    public void setValidator(ConnectionValidator validator)
+    {
+        this.validator = validator;
+    }
+    
+    /** 设置检查连接超时时长，单位秒，=0表示不限制 */
+    public void setValidationTimeout(int validationTimeout)
+    {
+        this.validationTimeout = validationTimeout;
+    }
+    
+    /** 设置连接最近使用过多长时间内不再检查，单位毫秒，=0表示每次都检查 */
+    public void setValidationSkipTimeMs(long validationSkipTimeMs)
+    {
+        this.validationSkipTimeMs = validationSkipTimeMs;
+    }
+    
+    /** 设置空闲连接后台检查间隔毫秒数，运行中修改时重新安排检查任务 */
+    public void setValidationIntervalMs(long validationIntervalMs)
+    {
+        this.validationIntervalMs = validationIntervalMs;
+        scheduleValidation();
+    }
+    
+    /** 设置是否自适应调整连接数，运行中修改时重新安排调整任务 */
+    public void setAdaptive(boolean isAdaptive)
+    {
+        this.isAdaptive = isAdaptive;
+        scheduleAdaptive();
+    }
+    
+    /** 设置自适应滑动窗口秒数，运行中修改时重新开始统计 */
+    public void setAdaptiveWindow(int adaptiveWindow)
+    {
+        this.adaptiveWindow = Math.max(adaptiveWindow, ADAPTIVE_SAMPLE_TIME / 1000);
+        scheduleAdaptive();
+    }
+    
+    public void setAdaptiveHeadroom(int adaptiveHeadroom)
+    {
+        this.adaptiveHeadroom = Math.max(adaptiveHeadroom, 0);
+    }
+    
+    /** 设置连接泄漏检测阈值毫秒数，运行中修改时重新安排检测任务 */
+    public void setLeakDetectionThresholdMs(long leakDetectionThresholdMs)
+    {
+        this.leakDetectionThresholdMs = leakDetectionThresholdMs;
+        scheduleLeakDetection();
+    }
+    
+    public void setLeakTraceSampling(int leakTraceSampling)
+    {
+        this.leakTraceSampling = leakTraceSampling;
+    }
+    
+    public void setLeakReclaim(boolean isLeakReclaim)
+    {
+        this.isLeakReclaim = isLeakReclaim;
+    }
+    
+    /** 设置每个连接的语句缓存数，只对之后新建的连接生效 */
+    public void setStmtCacheSize(int stmtCacheSize)
+    {
+        this.stmtCacheSize = stmtCacheSize;
+    }
+    
+    public void setInitConcurrency(int initConcurrency)
+    {
+        this.initConcurrency = initConcurrency;
+    }
+    
+    public void setInitQuorum(int initQuorum)
+    {
+        this.initQuorum = initQuorum;
+    }
+    
+    public void setRecoverConcurrency(int recoverConcurrency)
+    {
+        this.recoverConcurrency = Math.max(recoverConcurrency, 1);
+    }
+    
+    /** 设置是否延迟绑定，只对之后获取的连接生效 */
+    public void setLazyBind(boolean isLazyBind)
+    {
+        this.isLazyBind = isLazyBind;
+    }
+    
+    /** 设置连接池分片子池数，<=0表示按CPU核数，不超过最大连接数，=1表示不分片，需在启动前设置 */
+    public void setPoolStripes(int poolStripes)
+    {
+        if (isRunning())
+        {
+            log.warn("数据库[%s]运行中不能修改分片子池数", id);
+            return;
+        }
+        
+        int count = poolStripes <= 0 ? Runtime.getRuntime().availableProcessors() : poolStripes;
+        this.poolStripes = Math.max(Math.min(count, maxPoolSize), 1);
+        connBag.setStripes(this.poolStripes);
+    }
+    
+    /** 设置关闭超时毫秒数，关闭物理连接前设置为网络超时，=0表示不设置 */
+    public void setCloseTimeoutMs(int closeTimeoutMs)
+    {
+        closer.setCloseTimeoutMs(closeTimeoutMs);
+    }
+    
+    /** 设置监视检查间隔毫秒数，最短1秒，运行中修改时从下次检查开始生效 */
+    public void setCheckTimeMs(long checkTimeMs)
+    {
+        this.checkTimeMs = Math.max(checkTimeMs, 1000);
+    }
+    
+    /** 设置语句默认执行超时秒数，只对之后创建的语句生效 */
+    public void setQueryTimeout(int queryTimeout)
+    {
+        this.queryTimeout = queryTimeout;
+    }
+    
+    /** 设置连接默认网络超时毫秒数，只对之后创建的连接生效 */
+    public void setNetworkTimeoutMs(int networkTimeoutMs)
+    {
+        this.networkTimeoutMs = networkTimeoutMs;
+    }
+    
+    /** 设置语句硬超时毫秒数，超时后由后台取消或中止连接，=0表示不开启，运行中修改时重新安排检查任务 */
+    public void setStmtHardTimeoutMs(long stmtHardTimeoutMs)
+    {
+        this.stmtHardTimeoutMs = stmtHardTimeoutMs;
+        scheduleStatementTimeout();
+    }
+    
+    /** 设置连接默认只读，只对之后创建的连接生效 */
+    public void setReadOnly(boolean isReadOnly)
+    {
+        this.isReadOnly = isReadOnly;
+    }
+    
+    public int getBreakerFailureThreshold()
+    {
+        return breaker.getFailureThreshold();
+    }
+    
+    /** 设置连续创建连接失败多少次打开熔断器，默认=0表示不开启 */
+    public void setBreakerFailureThreshold(int breakerFailureThreshold)
+    {
+        breaker.setFailureThreshold(breakerFailureThreshold);
+    }
+    
+    public long getBreakerOpenTimeMs()
+    {
+        return breaker.getOpenTimeMs();
+    }
+    
+    /** 设置熔断器打开时长，单位毫秒，到期后转为半开 */
+    public void setBreakerOpenTimeMs(long breakerOpenTimeMs)
+    {
+        breaker.setOpenTimeMs(breakerOpenTimeMs);
+    }
+    
+    public int getBreakerHalfOpenProbes()
+    {
+        return breaker.getHalfOpenProbes();
+    }
+    
+    public void setBreakerHalfOpenProbes(int breakerHalfOpenProbes)
+    {
+        breaker.setHalfOpenProbes(breakerHalfOpenProbes);
+    }
+    
+    /** 设置备用URL，和url一起组成连接节点，已有节点的健康状况重新统计 */
+    public void setFailoverUrls(String... failoverUrls)
+    {
+        List<Endpoint> list = new ArrayList<>();
+        list.add(new Endpoint(0, url));
+        for (int i = 0; failoverUrls != null && i < failoverUrls.length; i++)
+        {
+            String failoverUrl = failoverUrls[i] == null ? null : failoverUrls[i].trim();
+            if (failoverUrl == null || failoverUrl.isEmpty() || failoverUrl.equals(url))
+                continue;
+            
+            list.add(new Endpoint(list.size(), failoverUrl));
+        }
+        
+        this.endpoints = list.toArray(new Endpoint[list.size()]);
+    }
+    
+    public String[] getFailoverUrls()
+    {
+        Endpoint[] eps = endpoints;
+        String[] urls = new String[eps.length - 1];
+        for (int i = 1; i < eps.length; i++)
+        {
+            urls[i - 1] = eps[i].getUrl();
+        }
+        return urls;
+    }
+    
+    /***********************************/
+    // DataSource 管理操作，支持JMX调用
+    /***********************************/
+    
+    /** 驱逐所有空闲连接，返回驱逐数，驱逐后异步补足最小连接数 */
+    public int evictIdle()
+    {
+        int count = 0;
+        for (SQLConnection conn : connBag.values())
+        {
+            if (destroyIdleConnection(conn, "驱逐"))
+                count++;
+        }
+        
+        while (addConnectionAsync("驱逐", minPoolSize))
+        {// 逐个预留名额直到最小连接数
+        }
+        
+        log.info("数据库[%s]驱逐空闲连接[%s]个", id, count);
+        return count;
+    }
+    
+    /** 软重置，驱逐所有空闲连接，使用中的连接归还时销毁，不影响正在执行的业务 */
+    public void softReset()
+    {
+        for (SQLConnection conn : connBag.values())
+        {
+            conn.evict();
+        }
+        
+        evictIdle();
+        log.info("数据库[%s]软重置完成", id);
+    }
+    
+    /** 调整连接池大小，超出最大连接数的空闲连接立即销毁，使用中的归还时销毁，不足最小连接数的异步补足 */
+    public void resize(int minPoolSize, int maxPoolSize)
+    {
+        if (minPoolSize < 0 || maxPoolSize < 1 || minPoolSize > maxPoolSize)
+            throw new IllegalArgumentException("调整数据库连接池大小参数不正确[min:" + minPoolSize + ",max:" + maxPoolSize + "]");
+        
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = maxPoolSize;
+        
+        for (SQLConnection conn : connBag.values())
+        {
+            if (totalSize.get() <= maxPoolSize)
+                break;
+            
+            destroyIdleConnection(conn, "调整");
+        }
+        
+        while (addConnectionAsync("调整", minPoolSize))
+        {// 逐个预留名额直到最小连接数
+        }
+        
+        log.info("数据库[%s]调整连接池大小[min:%s,max:%s]", id, minPoolSize, maxPoolSize);
+    }
+    
+    /** 销毁一个空闲连接，预留成功后销毁，使用中的不处理 */
+    private boolean destroyIdleConnection(SQLConnection conn, String desc)
+    {
+        if (!connBag.reserve(conn))
+            return false;
+        
+        removeConnection(conn);
+        closer.close(conn);
+        log.info("%s关闭数据库连接[%s][%s]成功", desc, id, conn.getId());
+        return true;
+    }
+    
+    /** 注册JMX管理接口，已注册的先注销，注册失败不影响连接池使用 */
+    private void registerMBean()
+    {
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = getObjectName();
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+            
+            server.registerMBean(this, name);
+        }
+        catch (JMException e)
+        {
+            log.error("数据库[%s]注册JMX管理接口失败，%s", id, e.getMessage());
+        }
+    }
+    
+    /** 注销JMX管理接口 */
+    private void unregisterMBean()
+    {
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = getObjectName();
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+        }
+        catch (JMException e)
+        {
+            log.error("数据库[%s]注销JMX管理接口失败，%s", id, e.getMessage());
+        }
+    }
+    
+    /** JMX名称，com.xiyuan.orm:type=SQLDataSource,name=数据库服务编号 */
+    private ObjectName getObjectName() throws JMException
+    {
+        return new ObjectName("com.xiyuan.orm:type=SQLDataSource,name=" + ObjectName.quote(id));
+    }
+    
     /***********************************/
     // DataSource要求实现的方法，但没用上
     /***********************************/
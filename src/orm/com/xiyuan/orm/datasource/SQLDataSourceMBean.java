@@ -0,0 +1,178 @@
+package com.xiyuan.orm.datasource;
+
+/**
+ * 数据库连接池JMX管理接口，连接池启动时注册到平台MBeanServer，名称为com.xiyuan.orm:type=SQLDataSource,name=数据库服务编号 <br><br>
+ * 1.配置属性，支持动态修改的提供set方法<br>
+ * 2.运行计数，连接数、活跃数、等待数、语句缓存和统计指标<br>
+ * 3.连接状态，每个连接一行，含编号、已保持时长、已空闲时长和是否使用中<br>
+ * 4.管理操作，驱逐空闲连接、软重置和调整连接池大小<br>
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+public interface SQLDataSourceMBean
+{
+    /***********************************/
+    // 配置属性
+    /***********************************/
+    
+    public String getId();
+    
+    public String getDriver();
+    
+    public String getUrl();
+    
+    public String[] getFailoverUrls();
+    
+    public String getUser();
+    
+    public int getMinPoolSize();
+    
+    public void setMinPoolSize(int minPoolSize);
+    
+    public int getMaxPoolSize();
+    
+    public void setMaxPoolSize(int maxPoolSize);
+    
+    public long getMaxKeepTimeMs();
+    
+    public void setMaxKeepTime(long maxKeepTime);
+    
+    public long getMaxIdleTimeMs();
+    
+    public void setMaxIdleTime(long maxIdleTime);
+    
+    public int getMaxKeepTimeJitter();
+    
+    public void setMaxKeepTimeJitter(int maxKeepTimeJitter);
+    
+    public int getMaxRetirePerCheck();
+    
+    public void setMaxRetirePerCheck(int maxRetirePerCheck);
+    
+    public boolean isChkConnOnTimer();
+    
+    public void setChkConnOnTimer(boolean isChkConnOnTimer);
+    
+    public boolean isGetEffective();
+    
+    public void setGetEffective(boolean isGetEffective);
+    
+    public boolean isChkConnOnRelease();
+    
+    public void setChkConnOnRelease(boolean isChkConnOnRelease);
+    
+    public int getValidationTimeout();
+    
+    public void setValidationTimeout(int validationTimeout);
+    
+    public long getValidationSkipTimeMs();
+    
+    public void setValidationSkipTimeMs(long validationSkipTimeMs);
+    
+    public long getValidationIntervalMs();
+    
+    public void setValidationIntervalMs(long validationIntervalMs);
+    
+    public long getCheckTimeMs();
+    
+    public void setCheckTimeMs(long checkTimeMs);
+    
+    public int getPoolStripes();
+    
+    public boolean isLazyBind();
+    
+    public void setLazyBind(boolean isLazyBind);
+    
+    public int getCloseTimeoutMs();
+    
+    public void setCloseTimeoutMs(int closeTimeoutMs);
+    
+    public int getPendingCloses();
+    
+    public long getSlowCloses();
+    
+    public long getLeakDetectionThresholdMs();
+    
+    public void setLeakDetectionThresholdMs(long leakDetectionThresholdMs);
+    
+    public boolean isLeakReclaim();
+    
+    public void setLeakReclaim(boolean isLeakReclaim);
+    
+    public boolean isAdaptive();
+    
+    public void setAdaptive(boolean isAdaptive);
+    
+    public int getAdaptiveHeadroom();
+    
+    public void setAdaptiveHeadroom(int adaptiveHeadroom);
+    
+    public int getQueryTimeout();
+    
+    public void setQueryTimeout(int queryTimeout);
+    
+    public int getNetworkTimeoutMs();
+    
+    public void setNetworkTimeoutMs(int networkTimeoutMs);
+    
+    public long getStmtHardTimeoutMs();
+    
+    public void setStmtHardTimeoutMs(long stmtHardTimeoutMs);
+    
+    public int getBreakerFailureThreshold();
+    
+    public void setBreakerFailureThreshold(int breakerFailureThreshold);
+    
+    public long getBreakerOpenTimeMs();
+    
+    public void setBreakerOpenTimeMs(long breakerOpenTimeMs);
+    
+    public int getBreakerHalfOpenProbes();
+    
+    public void setBreakerHalfOpenProbes(int breakerHalfOpenProbes);
+    
+    /***********************************/
+    // 运行计数
+    /***********************************/
+    
+    public int getConnSize();
+    
+    public int getConnActiveSize();
+    
+    public int getConnWaitSize();
+    
+    public long getLeakCount();
+    
+    public long getStmtCacheHits();
+    
+    public long getStmtCacheMisses();
+    
+    public long getStmtCacheEvictions();
+    
+    public long getStmtCancels();
+    
+    public int getAdaptiveTarget();
+    
+    public String getBreakerState();
+    
+    public long getBreakerRejects();
+    
+    public String getMetricsInfo();
+    
+    public String[] getConnStates();
+    
+    public String[] getEndpointStates();
+    
+    /***********************************/
+    // 管理操作
+    /***********************************/
+    
+    /** 驱逐所有空闲连接，返回驱逐数，驱逐后异步补足最小连接数 */
+    public int evictIdle();
+    
+    /** 软重置，驱逐所有空闲连接，使用中的连接归还时销毁，不影响正在执行的业务 */
+    public void softReset();
+    
+    /** 调整连接池大小，超出最大连接数的空闲连接立即销毁，使用中的归还时销毁，不足最小连接数的异步补足 */
+    public void resize(int minPoolSize, int maxPoolSize);
+}
@@ -0,0 +1,273 @@
+package com.xiyuan.orm.datasource;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.xiyuan.core.logging.Log;
+import org.xiyuan.core.logging.LogFactory;
+
+/**
+ * 数据库读写分离数据源，一个主库连接池和多个从库连接池 <br><br>
+ * 1.getConnection()获取主库连接，用于写操作和要求强一致的读操作，之后再setReadOnly(true)只设置主库连接只读，不会改路由到从库<br>
+ * 2.getReadConnection()获取只读连接，是路由到从库的唯一入口，在可用的从库中选择活跃比例最低的，相同时轮询<br>
+ * 3.从库依次不等待地尝试借用空闲连接，跳过已耗尽的，都耗尽时回退到主库等待，不回退时在最后一个可用从库上等待<br>
+ * 4.getConnection(true)等同于getReadConnection()，便于按业务标志选择<br>
+ * 5.从库启动失败不影响主库，只读请求回退到主库<br>
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+public class SQLRoutingDataSource implements DataSource, AutoCloseable
+{
+    private static final Log log = LogFactory.getLog("database.log");
+    
+    private final String id;
+    private final SQLDataSource primary;
+    private final SQLDataSource[] replicas;
+    private final AtomicInteger sequence;
+    private boolean isReadFromPrimary = true; // 从库都不可用时是否回退到主库读取
+    
+    /**
+     * 构造函数
+     *
+     * @param id        数据源编号
+     * @param primary   主库连接池
+     * @param replicas  从库连接池列表
+     */
+    public SQLRoutingDataSource(String id, SQLDataSource primary, SQLDataSource... replicas)
+    {
+        this.id = id;
+        this.primary = primary;
+        this.replicas = replicas == null ? new SQLDataSource[0] : replicas.clone();
+        this.sequence = new AtomicInteger(0);
+    }
+    
+    /** 启动主库和从库连接池，主库启动失败返回false，从库启动失败只记录日志 */
+    public boolean start()
+    {
+        if (!primary.start())
+        {
+            log.error("读写分离数据源[%s]主库[%s]启动失败", id, primary.getId());
+            return false;
+        }
+        
+        for (SQLDataSource replica : replicas)
+        {
+            if (!replica.start())
+                log.error("读写分离数据源[%s]从库[%s]启动失败，只读请求将不再路由到该从库", id, replica.getId());
+        }
+        
+        return true;
+    }
+    
+    /** 关闭主库和从库连接池 */
+    public void close()
+    {
+        for (SQLDataSource replica : replicas)
+        {
+            replica.close();
+        }
+        
+        primary.close();
+    }
+    
+    /** 获取主库连接 */
+    public Connection getConnection() throws SQLException
+    {
+        return primary.getConnection();
+    }
+    
+    /**
+     * 获取连接
+     *
+     * @param readOnly  是否只读，=true时路由到从库
+     * @return          数据库连接
+     * @throws SQLException 数据库异常
+     */
+    public Connection getConnection(boolean readOnly) throws SQLException
+    {
+        return readOnly ? getReadConnection() : primary.getConnection();
+    }
+    
+    /**
+     * 获取只读连接，从活跃比例最低的从库开始依次不等待地尝试，都不可用或耗尽时按配置回退到主库等待，不回退时在最后一个可用从库上等待
+     *
+     * @return              数据库连接，已设置为只读
+     * @throws SQLException 数据库异常
+     */
+    public Connection getReadConnection() throws SQLException
+    {
+        SQLException last = null;
+        SQLDataSource candidate = null;
+        int start = selectReplica();
+        for (int i = 0; start >= 0 && i < replicas.length; i++)
+        {
+            SQLDataSource replica = replicas[(start + i) % replicas.length];
+            if (!replica.isDbAvailable())
+                continue;
+            
+            candidate = replica;
+            SQLConnection conn = replica.tryBorrow();
+            if (conn == null)
+                continue;
+            
+            try
+            {
+                return readOnly(new ConnectionHandle(conn));
+            }
+            catch (SQLException e)
+            {
+                last = e;
+                log.error("读写分离数据源[%s]从库[%s]获取连接失败，尝试下一个，%s", id, replica.getId(), e.getMessage());
+            }
+        }
+        
+        if (isReadFromPrimary || replicas.length == 0)
+            return primary.getConnection();
+        
+        if (candidate != null)
+            return readOnly(candidate.getConnection());
+        
+        throw last != null ? last : new SQLException("读写分离数据源[" + id + "]没有可用的从库");
+    }
+    
+    /** 设置连接为只读，从库连接默认只读时不会发送到数据库，设置失败时归还连接再抛出异常 */
+    private static Connection readOnly(Connection conn) throws SQLException
+    {
+        try
+        {
+            conn.setReadOnly(true);
+            return conn;
+        }
+        catch (SQLException e)
+        {
+            conn.close();
+            throw e;
+        }
+    }
+    
+    /** 选择活跃比例最低的可用从库，相同时从轮询位置开始取第一个，没有可用从库返回-1 */
+    private int selectReplica()
+    {
+        if (replicas.length == 0)
+            return -1;
+        
+        int offset = (sequence.getAndIncrement() & Integer.MAX_VALUE) % replicas.length;
+        int best = -1;
+        double bestLoad = Double.MAX_VALUE;
+        for (int i = 0; i < replicas.length; i++)
+        {
+            int ind = (offset + i) % replicas.length;
+            SQLDataSource replica = replicas[ind];
+            if (!replica.isDbAvailable())
+                continue;
+            
+            double load = (double)(replica.getConnActiveSize() + replica.getConnWaitSize()) / Math.max(replica.getMaxPoolSize(), 1);
+            if (load < bestLoad)
+            {
+                best = ind;
+                bestLoad = load;
+            }
+        }
+        
+        return best;
+    }
+    
+    /***********************************/
+    // 参数信息
+    /***********************************/
+    
+    public String getId()
+    {
+        return id;
+    }
+    
+    public SQLDataSource getPrimary()
+    {
+        return primary;
+    }
+    
+    public SQLDataSource[] getReplicas()
+    {
+        return replicas.clone();
+    }
+    
+    public boolean isReadFromPrimary()
+    {
+        return isReadFromPrimary;
+    }
+    
+    public void setReadFromPrimary(boolean isReadFromPrimary)
+    {
+        this.isReadFromPrimary = isReadFromPrimary;
+    }
+    
+    @Override
+    public String toString()
+    {
+        StringBuilder strb = new StringBuilder("读写分离数据源[").append(id).append("][primary:").append(primary.getId()).append(",replicas:");
+        for (int i = 0; i < replicas.length; i++)
+        {
+            strb.append(i == 0 ? "" : "/").append(replicas[i].getId());
+        }
+        return strb.append("]").toString();
+    }
+    
+    /***********************************/
+    // DataSource要求实现的方法，但没用上
+    /***********************************/
+    
+    public Connection getConnection(String username, String password) throws SQLException
+    {
+        throw new SQLException("不支持传入用户名和密码获取连接");
+    }
+    
+    public PrintWriter getLogWriter() throws SQLException
+    {
+        return DriverManager.getLogWriter();
+    }
+    
+    public int getLoginTimeout() throws SQLException
+    {
+        return DriverManager.getLoginTimeout();
+    }
+    
+    public void setLogWriter(PrintWriter out) throws SQLException
+    {
+        DriverManager.setLogWriter(out);
+    }
+    
+    public void setLoginTimeout(int seconds) throws SQLException
+    {
+        DriverManager.setLoginTimeout(seconds);
+    }
+    
+    /***********************************/
+    // JDK1.6增加
+    /***********************************/
+    
+    public boolean isWrapperFor(Class<?> iface) throws SQLException
+    {
+        return false;
+    }
+    
+    public <T> T unwrap(Class<T> iface) throws SQLException
+    {
+        return null;
+    }
+    
+    /***********************************/
+    // JDK1.7增加
+    /***********************************/
+    
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException
+    {
+        return null;
+    }
+}
@@ -0,0 +1,395 @@
+package com.xiyuan.orm.datasource;
+
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import javax.sql.DataSource;
+
+import org.xiyuan.core.logging.Log;
+import org.xiyuan.core.logging.LogFactory;
+
+/**
+ * 数据库分片数据源，按分片键把请求路由到多个连接池中的一个 <br><br>
+ * 1.哈希分片，数值型分片键按值取模，其他按字符串的CRC32取模，保证不同JVM计算结果一致<br>
+ * 2.范围分片，ranges为升序的分界值，共分片数-1个，第i个分片存放[ranges[i-1], ranges[i])的数据，分片键需为数值<br>
+ * 3.getConnection(shardKey)获取分片键所在分片的连接，单分片语句直接在该连接上执行<br>
+ * 4.query()跨分片查询，各分片并行执行同一语句后合并结果，有排序器时按排序器排序，有限制时截取前limit条<br>
+ * 5.跨分片查询的SQL应带有和排序器一致的order by，每个分片最多取limit条，合并后再排序截取，结果和单库一致<br>
+ * 6.任一分片查询失败时整体失败，不返回部分结果<br>
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+public class SQLShardingDataSource implements DataSource, AutoCloseable
+{
+    private static final Log log = LogFactory.getLog("database.log");
+    
+    private final String id;
+    private final SQLDataSource[] shards;
+    private final long[] ranges;
+    private ThreadPoolExecutor executor; // 跨分片查询执行器，每个分片最多一个线程
+    
+    /**
+     * 构造函数
+     *
+     * @param id        数据源编号
+     * @param ranges    范围分片的分界值，升序，个数为分片数-1，=null表示哈希分片
+     * @param shards    分片连接池列表
+     */
+    public SQLShardingDataSource(String id, long[] ranges, SQLDataSource... shards)
+    {
+        if (shards == null || shards.length == 0)
+            throw new IllegalArgumentException("分片数据源[" + id + "]没有配置分片");
+        
+        if (ranges != null && ranges.length != shards.length - 1)
+            throw new IllegalArgumentException("分片数据源[" + id + "]范围分界值个数应为分片数-1[ranges:" + ranges.length + ",shards:" + shards.length + "]");
+        
+        for (int i = 1; ranges != null && i < ranges.length; i++)
+        {
+            if (ranges[i] <= ranges[i - 1])
+                throw new IllegalArgumentException("分片数据源[" + id + "]范围分界值应为升序" + Arrays.toString(ranges));
+        }
+        
+        this.id = id;
+        this.shards = shards.clone();
+        this.ranges = ranges == null ? null : ranges.clone();
+    }
+    
+    /** 启动所有分片连接池和跨分片查询执行器，任一分片启动失败则关闭已启动的分片并返回false */
+    public boolean start()
+    {
+        for (int i = 0; i < shards.length; i++)
+        {
+            if (shards[i].start())
+                continue;
+            
+            log.error("分片数据源[%s]分片[%s]启动失败", id, shards[i].getId());
+            for (int j = 0; j < i; j++)
+            {
+                shards[j].close();
+            }
+            return false;
+        }
+        
+        executor = new ThreadPoolExecutor(shards.length, shards.length, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+        {
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "SQLShardingDataSource-" + id + "-query");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return true;
+    }
+    
+    /** 关闭跨分片查询执行器和所有分片连接池 */
+    public void close()
+    {
+        if (executor != null)
+            executor.shutdownNow();
+        
+        for (SQLDataSource shard : shards)
+        {
+            shard.close();
+        }
+    }
+    
+    /** 分片数据源必须指定分片键，不支持无分片键获取连接 */
+    public Connection getConnection() throws SQLException
+    {
+        throw new SQLException("分片数据源[" + id + "]需要指定分片键获取连接");
+    }
+    
+    /**
+     * 获取分片键所在分片的连接
+     *
+     * @param shardKey      分片键
+     * @return              数据库连接
+     * @throws SQLException 分片键不正确或数据库异常
+     */
+    public Connection getConnection(Object shardKey) throws SQLException
+    {
+        return shards[getShardIndex(shardKey)].getConnection();
+    }
+    
+    /**
+     * 获取分片键所在分片的连接池
+     *
+     * @param shardKey      分片键
+     * @return              分片连接池
+     * @throws SQLException 分片键不正确
+     */
+    public SQLDataSource getShard(Object shardKey) throws SQLException
+    {
+        return shards[getShardIndex(shardKey)];
+    }
+    
+    /**
+     * 计算分片键所在分片的索引
+     *
+     * @param shardKey      分片键
+     * @return              分片索引，从0开始
+     * @throws SQLException 分片键为null或范围分片时不是数值
+     */
+    public int getShardIndex(Object shardKey) throws SQLException
+    {
+        if (shardKey == null)
+            throw new SQLException("分片数据源[" + id + "]分片键不能为null");
+        
+        if (ranges == null)
+        {// 哈希分片
+            long hash = (shardKey instanceof Number) ? ((Number)shardKey).longValue() : crc32(shardKey.toString());
+            return (int)((hash % shards.length + shards.length) % shards.length);
+        }
+        
+        // 范围分片，等于分界值的属于后一个分片
+        long value = toLong(shardKey);
+        int ind = Arrays.binarySearch(ranges, value);
+        return ind >= 0 ? ind + 1 : -ind - 1;
+    }
+    
+    /**
+     * 跨分片查询，各分片并行执行后合并结果
+     *
+     * @param sql           查询语句，各分片相同，需要排序时应带有和排序器一致的order by
+     * @param params        语句参数，可为null
+     * @param mapper        行映射器
+     * @param comparator    合并后的排序器，=null时按分片顺序合并
+     * @param limit         合并后最多返回的条数，<=0表示不限制
+     * @return              合并后的结果
+     * @throws SQLException 任一分片查询失败
+     */
+    public <T> List<T> query(final String sql, final Object[] params, final RowMapper<T> mapper, Comparator<? super T> comparator, final int limit) throws SQLException
+    {
+        if (executor == null || executor.isShutdown())
+            throw new SQLException("分片数据源[" + id + "]未启动或已关闭");
+        
+        List<Future<List<T>>> futures = new ArrayList<>(shards.length - 1);
+        List<T> result;
+        try
+        {
+            for (int i = 1; i < shards.length; i++)
+            {
+                final SQLDataSource shard = shards[i];
+                futures.add(executor.submit(new Callable<List<T>>()
+                {
+                    public List<T> call() throws SQLException
+                    {
+                        return query(shard, sql, params, mapper, limit);
+                    }
+                }));
+            }
+            
+            // 第一个分片在当前线程执行，少一次线程切换
+            result = query(shards[0], sql, params, mapper, limit);
+            for (Future<List<T>> future : futures)
+            {
+                result.addAll(get(future));
+            }
+        }
+        finally
+        {// 失败时未开始的分片不再执行，已开始的执行完归还连接
+            for (Future<List<T>> future : futures)
+            {
+                future.cancel(false);
+            }
+        }
+        
+        if (comparator != null)
+            Collections.sort(result, comparator);
+        
+        if (limit > 0 && result.size() > limit)
+            result = new ArrayList<>(result.subList(0, limit));
+        
+        return result;
+    }
+    
+    /** 在一个分片上查询，最多取limit条 */
+    private static <T> List<T> query(SQLDataSource shard, String sql, Object[] params, RowMapper<T> mapper, int limit) throws SQLException
+    {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rst = null;
+        
+        try
+        {
+            conn = shard.getConnection();
+            pstmt = conn.prepareStatement(sql);
+            if (limit > 0)
+                pstmt.setMaxRows(limit);
+            
+            for (int i = 0; params != null && i < params.length; i++)
+            {
+                pstmt.setObject(i + 1, params[i]);
+            }
+            
+            List<T> list = new ArrayList<>();
+            rst = pstmt.executeQuery();
+            while (rst.next())
+            {
+                list.add(mapper.map(rst));
+            }
+            return list;
+        }
+        finally
+        {
+            DBClose.close(rst, pstmt, conn);
+        }
+    }
+    
+    /** 获取分片查询结果，分片异常转为数据库异常抛出 */
+    private <T> List<T> get(Future<List<T>> future) throws SQLException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SQLException("分片数据源[" + id + "]跨分片查询被中断", e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException)
+                throw (SQLException)cause;
+            
+            throw new SQLException("分片数据源[" + id + "]跨分片查询失败", cause);
+        }
+    }
+    
+    /** 范围分片键转为数值 */
+    private long toLong(Object shardKey) throws SQLException
+    {
+        if (shardKey instanceof Number)
+            return ((Number)shardKey).longValue();
+        
+        try
+        {
+            return Long.parseLong(shardKey.toString().trim());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new SQLException("分片数据源[" + id + "]范围分片键不是数值[" + shardKey + "]");
+        }
+    }
+    
+    /** 字符串分片键的哈希值，用CRC32保证不同JVM和重启后一致 */
+    private static long crc32(String shardKey)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(shardKey.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+    
+    /***********************************/
+    // 参数信息
+    /***********************************/
+    
+    public String getId()
+    {
+        return id;
+    }
+    
+    public SQLDataSource[] getShards()
+    {
+        return shards.clone();
+    }
+    
+    public int getShardCount()
+    {
+        return shards.length;
+    }
+    
+    public long[] getRanges()
+    {
+        return ranges == null ? null : ranges.clone();
+    }
+    
+    @Override
+    public String toString()
+    {
+        StringBuilder strb = new StringBuilder("分片数据源[").append(id).append("][").append(ranges == null ? "hash" : "range").append(",shards:");
+        for (int i = 0; i < shards.length; i++)
+        {
+            strb.append(i == 0 ? "" : "/").append(shards[i].getId());
+        }
+        if (ranges != null)
+            strb.append(",ranges:").append(Arrays.toString(ranges));
+        return strb.append("]").toString();
+    }
+    
+    /***********************************/
+    // DataSource要求实现的方法，但没用上
+    /***********************************/
+    
+    public Connection getConnection(String username, String password) throws SQLException
+    {
+        throw new SQLException("不支持传入用户名和密码获取连接");
+    }
+    
+    public PrintWriter getLogWriter() throws SQLException
+    {
+        return DriverManager.getLogWriter();
+    }
+    
+    public int getLoginTimeout() throws SQLException
+    {
+        return DriverManager.getLoginTimeout();
+    }
+    
+    public void setLogWriter(PrintWriter out) throws SQLException
+    {
+        DriverManager.setLogWriter(out);
+    }
+    
+    public void setLoginTimeout(int seconds) throws SQLException
+    {
+        DriverManager.setLoginTimeout(seconds);
+    }
+    
+    /***********************************/
+    // JDK1.6增加
+    /***********************************/
+    
+    public boolean isWrapperFor(Class<?> iface) throws SQLException
+    {
+        return false;
+    }
+    
+    public <T> T unwrap(Class<T> iface) throws SQLException
+    {
+        return null;
+    }
+    
+    /***********************************/
+    // JDK1.7增加
+    /***********************************/
+    
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException
+    {
+        return null;
+    }
+}
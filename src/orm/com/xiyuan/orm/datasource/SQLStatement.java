@@ -0,0 +1,178 @@
+package com.xiyuan.orm.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 数据库语句代理类，对SQLConnection创建的Statement/PreparedStatement/CallableStatement进行代理 <br><br>
+ * 1.语句和返回的结果集抛出的SQLException交给SQLConnection检查，致命的SQLState(如08xxx)标记连接已损坏<br>
+ * 2.getConnection()返回SQLConnection，防止业务直接关闭物理连接，结果集的getStatement()返回语句代理<br>
+ * 3.有语句缓存键的为逻辑语句，close()时把物理语句放回连接的语句缓存，关闭后再调用抛出异常，业务修改的语句设置放回时恢复<br>
+ * 4.生成代理时设置连接池默认的执行超时，执行时在连接上登记正在执行的语句，用于后台线程取消超过硬上限的语句<br>
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+final class SQLStatement implements InvocationHandler
+{
+    private final SQLConnection conn;
+    private final Statement stmt;
+    private final StatementCache.Key key; // 语句缓存键，=null表示不缓存
+    private final StatementCache.Settings settings; // 业务修改过的语句设置，不缓存时为null
+    private volatile boolean closed;
+    
+    private SQLStatement(SQLConnection conn, Statement stmt, StatementCache.Key key)
+    {
+        this.conn = conn;
+        this.stmt = stmt;
+        this.key = key;
+        this.settings = key == null ? null : new StatementCache.Settings();
+    }
+    
+    /**
+     * 生成语句代理
+     *
+     * @param conn      连接池连接
+     * @param stmt      物理语句
+     * @param iface     语句接口，Statement/PreparedStatement/CallableStatement
+     * @return          语句代理
+     * @throws SQLException 设置执行超时异常
+     */
+    static <T extends Statement> T newProxy(SQLConnection conn, T stmt, Class<T> iface) throws SQLException
+    {
+        return newProxy(conn, stmt, iface, null);
+    }
+    
+    /**
+     * 生成语句代理，有语句缓存键时关闭后放回语句缓存
+     *
+     * @param conn      连接池连接
+     * @param stmt      物理语句
+     * @param iface     语句接口，PreparedStatement/CallableStatement
+     * @param key       语句缓存键，=null表示不缓存
+     * @return          语句代理
+     * @throws SQLException 设置执行超时异常，物理语句已关闭
+     */
+    static <T extends Statement> T newProxy(SQLConnection conn, T stmt, Class<T> iface, StatementCache.Key key) throws SQLException
+    {
+        int queryTimeout = conn.getDefaultQueryTimeout();
+        if (queryTimeout > 0)
+        {
+            try
+            {
+                stmt.setQueryTimeout(queryTimeout);
+            }
+            catch (SQLException e)
+            {// 设置失败时关闭物理语句，不交给业务也不放回语句缓存
+                try
+                {
+                    stmt.close();
+                }
+                catch (SQLException ex)
+                {}
+                throw conn.checkException(e);
+            }
+        }
+        
+        Object proxy = Proxy.newProxyInstance(SQLStatement.class.getClassLoader(), new Class<?>[] { iface }, new SQLStatement(conn, stmt, key));
+        return iface.cast(proxy);
+    }
+    
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+    {
+        String name = method.getName();
+        if ("getConnection".equals(name) && method.getParameterTypes().length == 0)
+            return conn;
+        
+        if ("equals".equals(name) && method.getParameterTypes().length == 1)
+            return proxy == args[0];
+        
+        if ("hashCode".equals(name) && method.getParameterTypes().length == 0)
+            return System.identityHashCode(proxy);
+        
+        if (key != null)
+        {// 缓存的逻辑语句，关闭时放回语句缓存，物理语句不关闭
+            if ("close".equals(name) && method.getParameterTypes().length == 0)
+            {
+                if (!closed)
+                {
+                    closed = true;
+                    conn.requiteStatement(key, (PreparedStatement)stmt, settings);
+                }
+                return null;
+            }
+            
+            if ("isClosed".equals(name) && method.getParameterTypes().length == 0)
+                return closed;
+            
+            if (closed)
+                throw new SQLException("语句已关闭");
+            
+            settings.beforeInvoke(stmt, name);
+        }
+        
+        boolean executing = name.startsWith("execute");
+        if (executing)
+            conn.executing(stmt);
+        
+        try
+        {
+            Object result = method.invoke(stmt, args);
+            return result instanceof ResultSet ? newResultSet((ResultSet)result, proxy) : result;
+        }
+        catch (InvocationTargetException e)
+        {
+            throw check(e);
+        }
+        finally
+        {
+            if (executing)
+                conn.executed();
+        }
+    }
+    
+    /** 生成结果集代理，抛出的SQLException交给连接检查，getStatement()返回语句代理 */
+    private ResultSet newResultSet(final ResultSet rs, final Object stmtProxy)
+    {
+        return (ResultSet)Proxy.newProxyInstance(SQLStatement.class.getClassLoader(), new Class<?>[] { ResultSet.class }, new InvocationHandler()
+        {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                String name = method.getName();
+                if ("getStatement".equals(name) && method.getParameterTypes().length == 0)
+                    return stmtProxy;
+                
+                if ("equals".equals(name) && method.getParameterTypes().length == 1)
+                    return proxy == args[0];
+                
+                if ("hashCode".equals(name) && method.getParameterTypes().length == 0)
+                    return System.identityHashCode(proxy);
+                
+                try
+                {
+                    return method.invoke(rs, args);
+                }
+                catch (InvocationTargetException e)
+                {
+                    throw check(e);
+                }
+            }
+        });
+    }
+    
+    /** 取出反射调用的原始异常，SQLException交给连接检查是否致命 */
+    private Throwable check(InvocationTargetException e)
+    {
+        Throwable cause = e.getCause();
+        if (cause instanceof SQLException)
+            return conn.checkException((SQLException)cause);
+        
+        return cause;
+    }
+}
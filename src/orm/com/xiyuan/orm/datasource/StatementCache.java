@@ -0,0 +1,342 @@
+package com.xiyuan.orm.datasource;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * 数据库连接语句缓存，每个SQLConnection一个，按LRU(Least Recently Used)淘汰 <br><br>
+ * 1.以SQL和结果集类型/并发/保持/自增主键等创建参数作为键，缓存物理PreparedStatement/CallableStatement<br>
+ * 2.取出时从缓存中移除，同一连接上同一SQL同时打开多个语句时各自独立，业务关闭逻辑语句时再放回缓存<br>
+ * 3.放回时恢复业务修改过的语句设置(最大行数/获取行数/执行超时/获取方向/转义处理/最大字段长度)，恢复失败的语句关闭不缓存<br>
+ * 4.连接关闭时由关闭线程清空缓存，缓存操作加锁，清空后再放回的语句直接关闭，JDBC调用都在锁外执行<br>
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+final class StatementCache
+{
+    private final SQLDataSource source;
+    private final int maxSize;
+    private final LinkedHashMap<Key, PreparedStatement> cache;
+    private boolean closed; // 是否已清空，清空后不再缓存
+    
+    public StatementCache(SQLDataSource source, int maxSize)
+    {
+        this.source = source;
+        this.maxSize = maxSize;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true);
+    }
+    
+    /**
+     * 取出一个缓存的语句，取出后从缓存中移除
+     *
+     * @param key   语句键
+     * @return      物理语句，=null表示未命中
+     */
+    public PreparedStatement take(Key key)
+    {
+        PreparedStatement stmt;
+        synchronized (this)
+        {
+            stmt = cache.remove(key);
+        }
+        
+        if (stmt == null)
+        {
+            source.stmtCacheMiss();
+            return null;
+        }
+        
+        source.stmtCacheHit();
+        return stmt;
+    }
+    
+    /**
+     * 放回一个语句，清除参数和结果集并恢复语句设置后缓存，恢复失败、同键已有缓存或已清空时关闭语句，超出缓存数时淘汰最久未使用的语句
+     *
+     * @param key       语句键
+     * @param stmt      物理语句
+     * @param settings  业务修改过的语句设置
+     */
+    public void put(Key key, PreparedStatement stmt, Settings settings)
+    {
+        if (!reset(stmt, settings))
+        {
+            close(stmt);
+            return;
+        }
+        
+        PreparedStatement evicted = null;
+        synchronized (this)
+        {
+            if (closed || cache.containsKey(key))
+                evicted = stmt;
+            else
+            {
+                cache.put(key, stmt);
+                if (cache.size() > maxSize)
+                {
+                    Iterator<PreparedStatement> it = cache.values().iterator();
+                    evicted = it.next();
+                    it.remove();
+                }
+            }
+        }
+        
+        if (evicted == null)
+            return;
+        
+        close(evicted);
+        if (evicted != stmt)
+            source.stmtCacheEviction();
+    }
+    
+    /** 清空缓存并关闭所有语句，连接关闭时调用，之后放回的语句直接关闭 */
+    public void clear()
+    {
+        List<PreparedStatement> list;
+        synchronized (this)
+        {
+            closed = true;
+            list = new ArrayList<>(cache.values());
+            cache.clear();
+        }
+        
+        for (PreparedStatement stmt : list)
+        {
+            close(stmt);
+        }
+    }
+    
+    /** 获取缓存语句数 */
+    public synchronized int size()
+    {
+        return cache.size();
+    }
+    
+    /** 清除语句上次执行留下的参数、批处理、结果集和警告，恢复业务修改过的语句设置，成功返回true */
+    private boolean reset(PreparedStatement stmt, Settings settings)
+    {
+        try
+        {
+            if (stmt.isClosed())
+                return false;
+            
+            ResultSet rst = stmt.getResultSet();
+            if (rst != null)
+                rst.close();
+            
+            stmt.clearParameters();
+            stmt.clearWarnings();
+            settings.restore(stmt);
+        }
+        catch (SQLException e)
+        {
+            return false;
+        }
+        
+        try
+        {
+            stmt.clearBatch();
+        }
+        catch (SQLException e)
+        {// 不支持批处理的驱动忽略
+        }
+        
+        return true;
+    }
+    
+    private static void close(PreparedStatement stmt)
+    {
+        try
+        {
+            stmt.close();
+        }
+        catch (SQLException e)
+        {}
+    }
+    
+    /**
+     * 缓存语句的设置，业务第一次修改某项设置前记录原值，放回缓存时恢复，没有修改的不调用驱动
+     */
+    static final class Settings
+    {
+        private static final int MAX_ROWS = 1;
+        private static final int FETCH_SIZE = 2;
+        private static final int QUERY_TIMEOUT = 4;
+        private static final int FETCH_DIRECTION = 8;
+        private static final int ESCAPE_PROCESSING = 16;
+        private static final int MAX_FIELD_SIZE = 32;
+        
+        private int changedBits; // 已修改的设置
+        private int maxRows;
+        private int fetchSize;
+        private int queryTimeout;
+        private int fetchDirection;
+        private int maxFieldSize;
+        
+        /**
+         * 业务调用语句方法前检查，是设置方法且第一次修改时记录原值
+         *
+         * @param stmt  物理语句
+         * @param name  方法名
+         * @throws SQLException 读取原值异常
+         */
+        void beforeInvoke(Statement stmt, String name) throws SQLException
+        {
+            int bit = settingBit(name);
+            if (bit == 0 || (changedBits & bit) != 0)
+                return;
+            
+            switch (bit)
+            {
+                case MAX_ROWS:
+                    maxRows = stmt.getMaxRows();
+                    break;
+                case FETCH_SIZE:
+                    fetchSize = stmt.getFetchSize();
+                    break;
+                case QUERY_TIMEOUT:
+                    queryTimeout = stmt.getQueryTimeout();
+                    break;
+                case FETCH_DIRECTION:
+                    fetchDirection = stmt.getFetchDirection();
+                    break;
+                case MAX_FIELD_SIZE:
+                    maxFieldSize = stmt.getMaxFieldSize();
+                    break;
+            }
+            changedBits |= bit;
+        }
+        
+        /**
+         * 恢复修改过的设置
+         *
+         * @param stmt  物理语句
+         * @throws SQLException 恢复异常
+         */
+        void restore(Statement stmt) throws SQLException
+        {
+            if (changedBits == 0)
+                return;
+            
+            if ((changedBits & MAX_ROWS) != 0)
+                stmt.setMaxRows(maxRows);
+            if ((changedBits & FETCH_SIZE) != 0)
+                stmt.setFetchSize(fetchSize);
+            if ((changedBits & QUERY_TIMEOUT) != 0)
+                stmt.setQueryTimeout(queryTimeout);
+            if ((changedBits & FETCH_DIRECTION) != 0)
+                stmt.setFetchDirection(fetchDirection);
+            if ((changedBits & ESCAPE_PROCESSING) != 0)
+                stmt.setEscapeProcessing(true); // JDBC规定默认开启，且没有读取方法
+            if ((changedBits & MAX_FIELD_SIZE) != 0)
+                stmt.setMaxFieldSize(maxFieldSize);
+            
+            changedBits = 0;
+        }
+        
+        /** 设置方法对应的设置位，不是需要恢复的设置方法返回0 */
+        private static int settingBit(String name)
+        {
+            if (!name.startsWith("set"))
+                return 0;
+            
+            switch (name)
+            {
+                case "setMaxRows":
+                case "setLargeMaxRows":
+                    return MAX_ROWS;
+                case "setFetchSize":
+                    return FETCH_SIZE;
+                case "setQueryTimeout":
+                    return QUERY_TIMEOUT;
+                case "setFetchDirection":
+                    return FETCH_DIRECTION;
+                case "setEscapeProcessing":
+                    return ESCAPE_PROCESSING;
+                case "setMaxFieldSize":
+                    return MAX_FIELD_SIZE;
+                default:
+                    return 0;
+            }
+        }
+    }
+    
+    /**
+     * 语句缓存键，SQL和创建参数全部相同的语句才能复用
+     */
+    static final class Key
+    {
+        private final boolean callable;
+        private final String sql;
+        private final int resultSetType;
+        private final int resultSetConcurrency;
+        private final int resultSetHoldability;
+        private final int autoGeneratedKeys;
+        private final int[] columnIndexes;
+        private final String[] columnNames;
+        private final int hashCode;
+        
+        Key(boolean callable, String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability, int autoGeneratedKeys, int[] columnIndexes, String[] columnNames)
+        {
+            this.callable = callable;
+            this.sql = sql;
+            this.resultSetType = resultSetType;
+            this.resultSetConcurrency = resultSetConcurrency;
+            this.resultSetHoldability = resultSetHoldability;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+            this.columnIndexes = columnIndexes == null ? null : columnIndexes.clone();
+            this.columnNames = columnNames == null ? null : columnNames.clone();
+            
+            int h = sql.hashCode();
+            h = 31 * h + (callable ? 1 : 0);
+            h = 31 * h + resultSetType;
+            h = 31 * h + resultSetConcurrency;
+            h = 31 * h + resultSetHoldability;
+            h = 31 * h + autoGeneratedKeys;
+            h = 31 * h + Arrays.hashCode(this.columnIndexes);
+            h = 31 * h + Arrays.hashCode(this.columnNames);
+            this.hashCode = h;
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+        
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+            
+            if (!(obj instanceof Key))
+                return false;
+            
+            Key key = (Key)obj;
+            return hashCode == key.hashCode
+                && callable == key.callable
+                && resultSetType == key.resultSetType
+                && resultSetConcurrency == key.resultSetConcurrency
+                && resultSetHoldability == key.resultSetHoldability
+                && autoGeneratedKeys == key.autoGeneratedKeys
+                && sql.equals(key.sql)
+                && Arrays.equals(columnIndexes, key.columnIndexes)
+                && Arrays.equals(columnNames, key.columnNames);
+        }
+        
+        @Override
+        public String toString()
+        {
+            return sql;
+        }
+    }
+}
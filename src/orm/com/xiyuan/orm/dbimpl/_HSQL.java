@@ -76,6 +76,12 @@ public class _HSQL implements ORMPolicy
         return Strings.format(T_EXISTS_HSQL, tableName);
     }
     
+    @Override
+    public String toPingSQL()
+    {
+        return P_PING_HSQL;
+    }
+    
     @Override
     public String toAlertColumnAdd(String table, String column, String columnType, boolean notNull)
     {
@@ -43,6 +43,12 @@ public class _MSSQL implements ORMPolicy
         return Strings.format(T_EXISTS_MSSQL, tableName);
     }
     
+    @Override
+    public String toPingSQL()
+    {
+        return P_PING_MSSQL;
+    }
+    
     @Override
     public String toAlertColumnAdd(String table, String column, String columnType, boolean notNull)
     {
@@ -72,6 +72,12 @@ public class _MySQL implements ORMPolicy
         return Strings.format(T_EXISTS_MYSQL, databaseName, tableName);
     }
     
+    @Override
+    public String toPingSQL()
+    {
+        return P_PING_MYSQL;
+    }
+    
     @Override
     public String toAlertColumnAdd(String table, String column, String columnType, boolean notNull)
     {
@@ -57,6 +57,12 @@ public class _Oracle implements ORMPolicy
         return Strings.format(T_EXISTS_ORACLE, tableName);
     }
     
+    @Override
+    public String toPingSQL()
+    {
+        return P_PING_ORACLE;
+    }
+    
     /**
      * 增加表的一列，支持类型和是否为null
      * 
@@ -43,6 +43,12 @@ public class _PostgetSQL implements ORMPolicy
         return Strings.format(T_EXISTS_PSQL, tableName);
     }
     
+    @Override
+    public String toPingSQL()
+    {
+        return P_PING_PSQL;
+    }
+    
     /**
      * 增加表的一列，支持类型和是否为null
      * 
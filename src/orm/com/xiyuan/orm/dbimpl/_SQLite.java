@@ -45,6 +45,12 @@ public class _SQLite implements ORMPolicy
         return Strings.format(T_EXISTS_SQLITE, tableName);
     }
     
+    @Override
+    public String toPingSQL()
+    {
+        return P_PING_SQLITE;
+    }
+    
     /**
      * 增加表的一列，支持类型和是否为null
      * 
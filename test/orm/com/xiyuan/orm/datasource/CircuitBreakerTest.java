@@ -0,0 +1,115 @@
+package com.xiyuan.orm.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 熔断器测试，默认不开启，连续创建失败打开，到期半开放行探测，探测成功关闭失败重新打开
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+public class CircuitBreakerTest
+{
+    private CircuitBreaker breaker;
+    
+    @Before
+    public void setUp()
+    {
+        breaker = new CircuitBreaker("test");
+        breaker.setFailureThreshold(3);
+        breaker.setOpenTimeMs(200);
+    }
+    
+    @Test
+    public void disabledByDefault()
+    {
+        CircuitBreaker disabled = new CircuitBreaker("test");
+        assertEquals(0, disabled.getFailureThreshold());
+        for (int i = 0; i < 10; i++)
+        {
+            disabled.onCreateFailure();
+        }
+        disabled.onDbCheck(true);
+        
+        assertTrue(disabled.allow());
+        assertFalse(disabled.isOpen());
+        assertEquals(CircuitBreaker.CLOSED, disabled.getState());
+    }
+    
+    @Test
+    public void opensAfterConsecutiveFailures()
+    {
+        breaker.setOpenTimeMs(60000);
+        breaker.onCreateFailure();
+        breaker.onCreateFailure();
+        breaker.onCreateSuccess();
+        breaker.onCreateFailure();
+        breaker.onCreateFailure();
+        assertTrue(breaker.allow());
+        
+        breaker.onCreateFailure();
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allow());
+        assertEquals(1, breaker.getRejects());
+    }
+    
+    @Test
+    public void halfOpenAllowsOneProbeAndClosesOnSuccess() throws InterruptedException
+    {
+        breaker.onDbCheck(true);
+        assertFalse(breaker.allow());
+        
+        Thread.sleep(300);
+        assertTrue(breaker.allow());
+        assertEquals(CircuitBreaker.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allow());
+        
+        breaker.onCreateSuccess();
+        assertEquals(CircuitBreaker.CLOSED, breaker.getState());
+        assertTrue(breaker.allow());
+    }
+    
+    @Test
+    public void halfOpenReopensOnFailure() throws InterruptedException
+    {
+        breaker.onDbCheck(true);
+        Thread.sleep(300);
+        assertTrue(breaker.allow());
+        
+        breaker.onCreateFailure();
+        assertEquals(CircuitBreaker.OPEN, breaker.getState());
+        assertFalse(breaker.allow());
+        
+        Thread.sleep(300);
+        assertTrue(breaker.allow());
+        breaker.onTimeout();
+        assertEquals(CircuitBreaker.OPEN, breaker.getState());
+    }
+    
+    @Test
+    public void recoveredDbCheckEndsOpenTimeEarly()
+    {
+        breaker.setOpenTimeMs(60000);
+        breaker.onDbCheck(true);
+        assertFalse(breaker.allow());
+        
+        breaker.onDbCheck(false);
+        assertTrue(breaker.allow());
+        breaker.onBorrow();
+        assertEquals(CircuitBreaker.CLOSED, breaker.getState());
+    }
+    
+    @Test
+    public void disablingResetsState()
+    {
+        breaker.onDbCheck(true);
+        breaker.setFailureThreshold(0);
+        
+        assertEquals(CircuitBreaker.CLOSED, breaker.getState());
+        assertTrue(breaker.allow());
+    }
+}
@@ -0,0 +1,343 @@
+package com.xiyuan.orm.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 连接池容器测试，借用归还的状态转换、等待超时和移交，同步和异步等待者按登记顺序接收移交的连接
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+public class ConnectionBagTest
+{
+    private SQLDataSource source;
+    private ConnectionBag bag;
+    
+    @Before
+    public void setUp()
+    {
+        bag = new ConnectionBag();
+        source = new SQLDataSource("test", null, "jdbc:fake", null, null, 1, 2, 60)
+        {
+            @Override
+            void removeAsync(ConnectionFuture future)
+            {
+                bag.removeAsync(future);
+            }
+        };
+    }
+    
+    private SQLConnection newConnection()
+    {
+        return new SQLConnection(source, FakeJdbc.connection().<Connection>get());
+    }
+    
+    /** 启动同步等待线程，登记为等待者后返回 */
+    private Thread startWaiter(final AtomicReference<SQLConnection> result, final CountDownLatch done) throws InterruptedException
+    {
+        final int waiters = bag.getWaiters();
+        Thread thread = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    result.set(bag.borrow(TimeUnit.SECONDS.toNanos(5)));
+                }
+                catch (InterruptedException e)
+                {// 中断退出，结果为null
+                }
+                done.countDown();
+            }
+        };
+        thread.start();
+        waitFor(waiters + 1);
+        return thread;
+    }
+    
+    private void waitFor(int waiters) throws InterruptedException
+    {
+        for (int i = 0; i < 500 && bag.getWaiters() != waiters; i++)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(waiters, bag.getWaiters());
+    }
+    
+    @Test
+    public void borrowAndRequiteChangeState()
+    {
+        SQLConnection c1 = newConnection();
+        SQLConnection c2 = newConnection();
+        bag.add(c1);
+        bag.add(c2);
+        assertEquals(2, bag.size());
+        
+        assertSame(c1, bag.borrow());
+        assertSame(c2, bag.borrow());
+        assertEquals(SQLConnection.STATE_ACTIVE, c1.getState());
+        assertNull(bag.borrow());
+        
+        bag.requite(c2);
+        assertEquals(SQLConnection.STATE_IDLE, c2.getState());
+        assertSame(c2, bag.borrow());
+    }
+    
+    @Test
+    public void requiteOnlyActiveConnection()
+    {
+        SQLConnection c1 = newConnection();
+        bag.add(c1);
+        assertFalse(bag.requite(c1));
+        
+        assertSame(c1, bag.borrow());
+        assertTrue(bag.requite(c1));
+        assertFalse(bag.requite(c1));
+        assertEquals(SQLConnection.STATE_IDLE, c1.getState());
+    }
+    
+    @Test
+    public void closeTwiceWhileReborrowedDoesNothing() throws Exception
+    {
+        SQLConnection c1 = newConnection();
+        bag.add(c1);
+        
+        assertSame(c1, bag.borrow());
+        Connection first = new ConnectionHandle(source.borrowed(c1, System.nanoTime()));
+        first.close();
+        assertEquals(SQLConnection.STATE_IDLE, c1.getState());
+        assertEquals(0, source.getConnActiveSize());
+        
+        // 其他借用者借走同一个池内连接后，第一次借用的句柄再次关闭不影响新的借用
+        assertSame(c1, bag.borrow());
+        Connection second = new ConnectionHandle(source.borrowed(c1, System.nanoTime()));
+        first.close();
+        assertTrue(first.isClosed());
+        assertEquals(SQLConnection.STATE_ACTIVE, c1.getState());
+        assertNotNull(c1.getBorrowThread());
+        assertEquals(1, source.getConnActiveSize());
+        assertFalse(second.isClosed());
+        
+        second.close();
+        assertEquals(SQLConnection.STATE_IDLE, c1.getState());
+        assertEquals(0, source.getConnActiveSize());
+    }
+    
+    @Test
+    public void offeredConnectionIsAcceptedWhileSlotFree()
+    {
+        // 未运行时（如启动中）有空闲名额也接收，最大连接数为2
+        SQLConnection c1 = newConnection();
+        SQLConnection c2 = newConnection();
+        SQLConnection c3 = newConnection();
+        source.offerConnection(c1);
+        source.offerConnection(c2);
+        source.offerConnection(c3);
+        
+        assertEquals(2, source.getConnSize());
+        assertFalse(c1.isClosed());
+        assertTrue(c3.isClosed());
+    }
+    
+    @Test
+    public void borrowTimesOutWithoutConnection() throws InterruptedException
+    {
+        long startNs = System.nanoTime();
+        assertNull(bag.borrow(TimeUnit.MILLISECONDS.toNanos(50)));
+        assertTrue(System.nanoTime() - startNs >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(0, bag.getWaiters());
+    }
+    
+    @Test
+    public void waiterReceivesAddedConnection() throws Exception
+    {
+        AtomicReference<SQLConnection> result = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        startWaiter(result, done);
+        
+        SQLConnection c1 = newConnection();
+        bag.add(c1);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertSame(c1, result.get());
+        assertEquals(SQLConnection.STATE_ACTIVE, c1.getState());
+        assertEquals(0, bag.getWaiters());
+    }
+    
+    @Test
+    public void reservedConnectionIsNotBorrowed() throws Exception
+    {
+        SQLConnection c1 = newConnection();
+        bag.add(c1);
+        
+        assertTrue(bag.reserve(c1));
+        assertEquals(SQLConnection.STATE_RESERVED, c1.getState());
+        assertNull(bag.borrow());
+        assertFalse(bag.reserve(c1));
+        
+        AtomicReference<SQLConnection> result = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        startWaiter(result, done);
+        
+        bag.unreserve(c1);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertSame(c1, result.get());
+    }
+    
+    @Test
+    public void removeOnlyActiveOrReserved()
+    {
+        SQLConnection c1 = newConnection();
+        bag.add(c1);
+        assertFalse(bag.remove(c1));
+        
+        assertTrue(bag.reserve(c1));
+        assertTrue(bag.remove(c1));
+        assertEquals(SQLConnection.STATE_REMOVED, c1.getState());
+        assertEquals(0, bag.size());
+        
+        SQLConnection c2 = newConnection();
+        bag.add(c2);
+        assertSame(c2, bag.borrow());
+        assertTrue(bag.remove(c2));
+        assertNull(bag.borrow());
+    }
+    
+    @Test
+    public void clearRemovesAll()
+    {
+        bag.add(newConnection());
+        bag.add(newConnection());
+        
+        for (SQLConnection conn : bag.clear())
+        {
+            assertEquals(SQLConnection.STATE_REMOVED, conn.getState());
+        }
+        assertEquals(0, bag.size());
+        assertNull(bag.borrow());
+    }
+    
+    @Test
+    public void stripedBorrowStealsFromOtherStripes()
+    {
+        bag.setStripes(2);
+        for (int i = 0; i < 4; i++)
+        {
+            bag.add(newConnection());
+        }
+        
+        assertEquals(2, bag.getStripes());
+        for (int i = 0; i < 4; i++)
+        {
+            assertNotNull(bag.borrow());
+        }
+        assertNull(bag.borrow());
+    }
+    
+    @Test
+    public void syncWaiterBeforeAsyncWaiterIsServedFirst() throws Exception
+    {
+        SQLConnection c1 = newConnection();
+        SQLConnection c2 = newConnection();
+        c1.setState(SQLConnection.STATE_ACTIVE);
+        c2.setState(SQLConnection.STATE_ACTIVE);
+        bag.add(c1);
+        bag.add(c2);
+        
+        AtomicReference<SQLConnection> result = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        startWaiter(result, done);
+        
+        ConnectionFuture future = new ConnectionFuture(source, System.nanoTime());
+        bag.borrowAsync(future);
+        assertEquals(2, bag.getWaiters());
+        
+        bag.requite(c1);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertSame(c1, result.get());
+        assertFalse(future.isDone());
+        
+        bag.requite(c2);
+        assertTrue(future.isDone());
+        assertEquals(SQLConnection.STATE_ACTIVE, c2.getState());
+        assertEquals(0, bag.getWaiters());
+    }
+    
+    @Test
+    public void asyncWaiterBeforeSyncWaiterIsServedFirst() throws Exception
+    {
+        SQLConnection c1 = newConnection();
+        c1.setState(SQLConnection.STATE_ACTIVE);
+        bag.add(c1);
+        
+        ConnectionFuture future = new ConnectionFuture(source, System.nanoTime());
+        bag.borrowAsync(future);
+        
+        AtomicReference<SQLConnection> result = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread thread = startWaiter(result, done);
+        
+        bag.requite(c1);
+        assertTrue(future.isDone());
+        assertEquals(1, bag.getWaiters());
+        
+        thread.interrupt();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertNull(result.get());
+        assertEquals(0, bag.getWaiters());
+    }
+    
+    @Test
+    public void cancelledFutureLeavesQueue() throws Exception
+    {
+        SQLConnection c1 = newConnection();
+        c1.setState(SQLConnection.STATE_ACTIVE);
+        bag.add(c1);
+        
+        ConnectionFuture future = new ConnectionFuture(source, System.nanoTime());
+        bag.borrowAsync(future);
+        assertEquals(1, bag.getWaiters());
+        
+        assertTrue(future.cancel(false));
+        assertEquals(0, bag.getWaiters());
+        
+        bag.requite(c1);
+        assertEquals(SQLConnection.STATE_IDLE, c1.getState());
+        assertSame(c1, bag.borrow());
+    }
+    
+    @Test
+    public void futureRecordsRequestingThread() throws Exception
+    {
+        final SQLConnection c1 = newConnection();
+        c1.setState(SQLConnection.STATE_ACTIVE);
+        bag.add(c1);
+        
+        ConnectionFuture future = new ConnectionFuture(source, System.nanoTime());
+        bag.borrowAsync(future);
+        
+        Thread returner = new Thread()
+        {
+            public void run()
+            {
+                bag.requite(c1);
+            }
+        };
+        returner.start();
+        returner.join();
+        
+        assertTrue(future.isDone());
+        assertSame(Thread.currentThread(), c1.getBorrowThread());
+    }
+}
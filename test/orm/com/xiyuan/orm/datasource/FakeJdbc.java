@@ -0,0 +1,210 @@
+package com.xiyuan.orm.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 测试用JDBC对象，用动态代理模拟物理连接、语句和结果集，不依赖数据库 <br><br>
+ * 1.setXxx(v)记录属性，getXxx()/isXxx()返回记录值，未设置时返回类型默认值<br>
+ * 2.创建语句和返回结果集/元数据等JDBC接口的方法返回子对象，getConnection()返回父对象<br>
+ * 3.记录所有调用的方法名，可指定方法抛出的异常，在祖先对象上以"接口名.方法名"指定时对子对象生效<br>
+ * 4.结果集依次返回连接上的行数据，getObject(列号)返回当前行，语句设置了最大行数时最多返回最大行数<br>
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+final class FakeJdbc implements InvocationHandler
+{
+    final Map<String, Object> props = new ConcurrentHashMap<>(); // 属性值，键为去掉set/get/is前缀的属性名
+    final List<String> calls = new CopyOnWriteArrayList<>(); // 调用过的方法名
+    final Map<String, Throwable> failures = new ConcurrentHashMap<>(); // 调用时抛出异常的方法
+    final List<FakeJdbc> children = new CopyOnWriteArrayList<>(); // 创建的子对象
+    final List<Object> rows = new CopyOnWriteArrayList<>(); // 连接上的行数据，结果集依次返回
+    
+    private final FakeJdbc parent;
+    private Object proxy;
+    private int cursor; // 结果集当前行号，从1开始
+    
+    private FakeJdbc(FakeJdbc parent)
+    {
+        this.parent = parent;
+    }
+    
+    /** 生成模拟物理连接 */
+    static FakeJdbc connection()
+    {
+        FakeJdbc fake = new FakeJdbc(null);
+        fake.proxy(Connection.class);
+        fake.props.put("AutoCommit", true);
+        fake.props.put("TransactionIsolation", Connection.TRANSACTION_READ_COMMITTED);
+        fake.props.put("Catalog", "db");
+        fake.props.put("Schema", "public");
+        fake.props.put("Holdability", 1);
+        return fake;
+    }
+    
+    /** 获取代理对象 */
+    @SuppressWarnings("unchecked")
+    <T> T get()
+    {
+        return (T)proxy;
+    }
+    
+    /** 获取第index个子对象 */
+    FakeJdbc child(int index)
+    {
+        return children.get(index);
+    }
+    
+    /** 方法调用次数 */
+    int count(String name)
+    {
+        int count = 0;
+        for (String call : calls)
+        {
+            if (call.equals(name))
+                count++;
+        }
+        return count;
+    }
+    
+    /** 是否已关闭 */
+    boolean isClosed()
+    {
+        return Boolean.TRUE.equals(props.get("Closed"));
+    }
+    
+    private Object proxy(Class<?> iface)
+    {
+        proxy = Proxy.newProxyInstance(FakeJdbc.class.getClassLoader(), new Class<?>[] { iface }, this);
+        return proxy;
+    }
+    
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+    {
+        String name = method.getName();
+        int argc = method.getParameterTypes().length;
+        if ("equals".equals(name) && argc == 1)
+            return proxy == args[0];
+        
+        if ("hashCode".equals(name) && argc == 0)
+            return System.identityHashCode(proxy);
+        
+        if ("toString".equals(name) && argc == 0)
+            return "Fake" + proxy.getClass().getInterfaces()[0].getSimpleName();
+        
+        calls.add(name);
+        Throwable failure = failures.get(name);
+        String ifaceName = proxy.getClass().getInterfaces()[0].getSimpleName() + "." + name;
+        for (FakeJdbc p = parent; failure == null && p != null; p = p.parent)
+        {
+            failure = p.failures.get(ifaceName);
+        }
+        if (failure != null)
+            throw failure;
+        
+        if ("close".equals(name) && argc == 0)
+        {
+            props.put("Closed", true);
+            return null;
+        }
+        
+        if ("isValid".equals(name))
+            return !Boolean.FALSE.equals(props.get("Valid")) && !isClosed();
+        
+        if ("getConnection".equals(name) && argc == 0 && parent != null)
+            return parent.proxy;
+        
+        if ("next".equals(name) && argc == 0)
+            return next();
+        
+        if ("getObject".equals(name) && argc == 1 && args[0] instanceof Integer)
+            return root().rows.get(cursor - 1);
+        
+        if ("abort".equals(name) && argc == 1)
+        {
+            props.put("Closed", true);
+            return null;
+        }
+        
+        if ("setNetworkTimeout".equals(name) && argc == 2)
+        {
+            props.put("NetworkTimeout", args[1]);
+            return null;
+        }
+        
+        if (name.startsWith("set") && argc == 1)
+        {
+            props.put(name.substring(3), args[0]);
+            return null;
+        }
+        
+        Object value = null;
+        if (name.startsWith("get") && argc == 0)
+            value = props.get(name.substring(3));
+        else if (name.startsWith("is") && argc == 0)
+            value = props.get(name.substring(2));
+        
+        if (value != null)
+            return value;
+        
+        Class<?> type = method.getReturnType();
+        if (type.isInterface() && type.getName().startsWith("java.sql."))
+        {// 语句、结果集、元数据等返回子对象
+            FakeJdbc child = new FakeJdbc(this);
+            children.add(child);
+            return child.proxy(type);
+        }
+        
+        return defaultValue(type);
+    }
+    
+    /** 结果集移到下一行，超过行数或语句的最大行数时返回false */
+    private boolean next()
+    {
+        Object maxRows = parent == null ? null : parent.props.get("MaxRows");
+        int max = maxRows == null ? 0 : (Integer)maxRows;
+        if (cursor >= root().rows.size() || (max > 0 && cursor >= max))
+            return false;
+        
+        cursor++;
+        return true;
+    }
+    
+    /** 最上层的连接对象 */
+    private FakeJdbc root()
+    {
+        FakeJdbc fake = this;
+        while (fake.parent != null)
+        {
+            fake = fake.parent;
+        }
+        return fake;
+    }
+    
+    /** 基本类型的默认值 */
+    private static Object defaultValue(Class<?> type)
+    {
+        if (type == boolean.class)
+            return false;
+        if (type == int.class)
+            return 0;
+        if (type == long.class)
+            return 0L;
+        if (type == double.class)
+            return 0d;
+        if (type == float.class)
+            return 0f;
+        if (type == short.class)
+            return (short)0;
+        if (type == byte.class)
+            return (byte)0;
+        return null;
+    }
+}
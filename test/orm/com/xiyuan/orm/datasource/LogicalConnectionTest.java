@@ -0,0 +1,232 @@
+package com.xiyuan.orm.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 逻辑连接测试，创建语句时绑定物理连接，语句关闭且无事务时解除绑定，借用等待不阻塞其他调用
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+public class LogicalConnectionTest
+{
+    private final List<FakeJdbc> borrowed = new CopyOnWriteArrayList<>();
+    private final List<SQLConnection> released = new CopyOnWriteArrayList<>();
+    private final CountDownLatch borrowing = new CountDownLatch(1); // 借用开始等待时通知
+    private final CountDownLatch proceed = new CountDownLatch(1); // 放行等待中的借用
+    private volatile boolean blockNext; // 下一次借用是否等待放行
+    private volatile SQLConnection defaults; // 提供会话属性默认值的池内连接，=null表示池内没有连接
+    private SQLDataSource source;
+    private Connection logical;
+    
+    @Before
+    public void setUp()
+    {
+        source = new SQLDataSource("test", null, "jdbc:fake", null, null, 1, 2, 60)
+        {
+            @Override
+            SQLConnection borrowConnection() throws SQLException
+            {
+                if (blockNext)
+                {
+                    blockNext = false;
+                    borrowing.countDown();
+                    try
+                    {
+                        proceed.await(5, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        throw new SQLException(e);
+                    }
+                }
+                
+                FakeJdbc fake = FakeJdbc.connection();
+                borrowed.add(fake);
+                return new SQLConnection(this, fake.<Connection>get());
+            }
+            
+            @Override
+            public void release(SQLConnection conn)
+            {
+                released.add(conn);
+            }
+            
+            @Override
+            Object getSessionDefault(int bit)
+            {
+                SQLConnection conn = defaults;
+                return conn == null ? null : conn.getSessionDefault(bit);
+            }
+        };
+        logical = LogicalConnection.newProxy(source);
+    }
+    
+    @Test
+    public void bindsOnStatementAndUnbindsOnClose() throws SQLException
+    {
+        assertEquals(0, borrowed.size());
+        Statement stmt = logical.createStatement();
+        assertEquals(1, borrowed.size());
+        assertSame(logical, stmt.getConnection());
+        
+        Statement stmt2 = logical.createStatement();
+        assertEquals(1, borrowed.size());
+        
+        stmt.close();
+        assertEquals(0, released.size());
+        stmt2.close();
+        assertEquals(1, released.size());
+        
+        logical.createStatement().close();
+        assertEquals(2, borrowed.size());
+        assertEquals(2, released.size());
+    }
+    
+    @Test
+    public void transactionKeepsBindingUntilCommit() throws SQLException
+    {
+        logical.setAutoCommit(false);
+        assertEquals(0, borrowed.size());
+        assertFalse(logical.getAutoCommit());
+        
+        logical.createStatement().close();
+        assertEquals(1, borrowed.size());
+        assertEquals(false, borrowed.get(0).props.get("AutoCommit"));
+        assertEquals(0, released.size());
+        
+        logical.commit();
+        assertEquals(1, borrowed.get(0).count("commit"));
+        assertEquals(1, released.size());
+        
+        logical.rollback();
+        assertEquals(1, borrowed.size());
+    }
+    
+    @Test
+    public void closeUnbindsWithOpenStatements() throws SQLException
+    {
+        Statement stmt = logical.createStatement();
+        ResultSet rs = stmt.executeQuery("select 1");
+        logical.close();
+        
+        assertTrue(logical.isClosed());
+        assertEquals(1, released.size());
+        assertTrue(borrowed.get(0).child(0).isClosed());
+        
+        // 物理连接已归还，之前的语句和结果集不能再使用
+        assertTrue(stmt.isClosed());
+        assertTrue(rs.isClosed());
+        try
+        {
+            stmt.executeQuery("select 2");
+            fail();
+        }
+        catch (SQLException e)
+        {// 语句已关闭
+        }
+        try
+        {
+            rs.next();
+            fail();
+        }
+        catch (SQLException e)
+        {// 结果集已关闭
+        }
+        assertEquals(1, borrowed.get(0).child(0).count("executeQuery"));
+        assertEquals(1, borrowed.get(0).child(0).count("close"));
+        
+        stmt.close();
+        rs.close();
+        assertEquals(1, borrowed.get(0).child(0).count("close"));
+        assertEquals(1, released.size());
+    }
+    
+    @Test
+    public void unboundGettersUsePoolDefaults() throws SQLException
+    {
+        FakeJdbc fake = FakeJdbc.connection();
+        fake.failures.put("getSchema", new SQLException("不支持"));
+        defaults = new SQLConnection(source, fake.<Connection>get());
+        
+        assertTrue(logical.getAutoCommit());
+        assertFalse(logical.isReadOnly());
+        assertEquals(Connection.TRANSACTION_READ_COMMITTED, logical.getTransactionIsolation());
+        assertEquals("db", logical.getCatalog());
+        assertEquals(1, logical.getHoldability());
+        assertEquals(0, borrowed.size());
+        
+        // 默认值未知时借用物理连接获取
+        assertEquals("public", logical.getSchema());
+        assertEquals(1, borrowed.size());
+        assertEquals(1, released.size());
+    }
+    
+    @Test
+    public void resultSetAndMetaDataReturnLogicalObjects() throws SQLException
+    {
+        Statement stmt = logical.createStatement();
+        ResultSet rs = stmt.executeQuery("select 1");
+        assertSame(stmt, rs.getStatement());
+        
+        assertSame(logical, logical.getMetaData().getConnection());
+        assertNull(logical.getMetaData().getTables(null, null, "%", null).getStatement());
+        
+        stmt.close();
+        assertEquals(0, released.size());
+        logical.close();
+        assertEquals(1, released.size());
+    }
+    
+    @Test
+    public void borrowWaitDoesNotBlockOtherCalls() throws Exception
+    {
+        blockNext = true;
+        final AtomicReference<Statement> result = new AtomicReference<>();
+        Thread thread = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    result.set(logical.createStatement());
+                }
+                catch (SQLException e)
+                {// 结果为null，断言失败
+                }
+            }
+        };
+        thread.start();
+        assertTrue(borrowing.await(5, TimeUnit.SECONDS));
+        
+        // 借用等待期间设置会话属性不被阻塞，放行后重新借用并重放
+        logical.setReadOnly(true);
+        assertTrue(logical.isReadOnly());
+        assertEquals(0, borrowed.size());
+        proceed.countDown();
+        
+        thread.join(5000);
+        assertNotNull(result.get());
+        assertEquals(2, borrowed.size());
+        assertEquals(1, released.size());
+        assertEquals(true, borrowed.get(1).props.get("ReadOnly"));
+    }
+}
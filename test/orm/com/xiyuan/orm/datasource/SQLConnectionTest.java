@@ -0,0 +1,268 @@
+package com.xiyuan.orm.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 连接池连接测试，会话属性和当前值相同时跳过，归还时只重置改过的会话属性，中止连接时关闭物理连接并移出连接池
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+public class SQLConnectionTest
+{
+    private final List<SQLConnection> discarded = new CopyOnWriteArrayList<>();
+    private final List<Runnable> tasks = new CopyOnWriteArrayList<>();
+    private SQLDataSource source;
+    private FakeJdbc conn;
+    private SQLConnection pooled;
+    
+    /** 记录任务不执行的执行器 */
+    private final Executor executor = new Executor()
+    {
+        public void execute(Runnable command)
+        {
+            tasks.add(command);
+        }
+    };
+    
+    @Before
+    public void setUp()
+    {
+        source = new SQLDataSource("test", null, "jdbc:fake", null, null, 1, 2, 60)
+        {
+            @Override
+            void discard(SQLConnection conn)
+            {
+                discarded.add(conn);
+                super.discard(conn);
+            }
+        };
+        conn = FakeJdbc.connection();
+        pooled = new SQLConnection(source, conn.<Connection>get());
+    }
+    
+    @Test
+    public void resetSessionWithoutChangesSendsNothing() throws SQLException
+    {
+        pooled.setAutoCommit(true);
+        pooled.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        pooled.setCatalog("db");
+        
+        assertTrue(pooled.resetSession());
+        assertEquals(0, conn.count("setAutoCommit") + conn.count("setTransactionIsolation") + conn.count("setCatalog"));
+        assertEquals(0, conn.count("rollback"));
+    }
+    
+    @Test
+    public void resetSessionRestoresChangedAttributes() throws SQLException
+    {
+        pooled.setAutoCommit(false);
+        pooled.setReadOnly(true);
+        pooled.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        pooled.setCatalog("other");
+        pooled.setSchema("other");
+        
+        assertTrue(pooled.resetSession());
+        assertEquals(true, conn.props.get("AutoCommit"));
+        assertEquals(false, conn.props.get("ReadOnly"));
+        assertEquals(Connection.TRANSACTION_READ_COMMITTED, conn.props.get("TransactionIsolation"));
+        assertEquals("db", conn.props.get("Catalog"));
+        assertEquals("public", conn.props.get("Schema"));
+        
+        // 恢复自动提交前先回滚，避免未提交的事务被隐式提交
+        assertEquals(1, conn.count("rollback"));
+        assertTrue(conn.calls.lastIndexOf("rollback") < conn.calls.lastIndexOf("setAutoCommit"));
+        
+        // 重置后不再重复发送
+        int sent = conn.calls.size();
+        assertTrue(pooled.resetSession());
+        assertEquals(sent, conn.calls.size());
+    }
+    
+    @Test
+    public void resetSessionSkipsAttributesSetBackToDefault() throws SQLException
+    {
+        pooled.setReadOnly(true);
+        pooled.setReadOnly(false);
+        
+        assertTrue(pooled.resetSession());
+        assertEquals(2, conn.count("setReadOnly"));
+    }
+    
+    @Test
+    public void resetSessionFailureReturnsFalse() throws SQLException
+    {
+        pooled.setReadOnly(true);
+        conn.failures.put("setReadOnly", new SQLException("连接已断开", "08006"));
+        
+        assertFalse(pooled.resetSession());
+        assertTrue(pooled.isBroken());
+    }
+    
+    @Test
+    public void unknownAttributeIsAlwaysSentAndDiscardsOnRelease() throws SQLException
+    {
+        FakeJdbc old = FakeJdbc.connection();
+        old.failures.put("getSchema", new SQLException("不支持"));
+        SQLConnection legacy = new SQLConnection(source, old.<Connection>get());
+        
+        legacy.setCatalog("other");
+        assertTrue(legacy.resetSession());
+        
+        legacy.setSchema("public");
+        assertEquals(1, old.count("setSchema"));
+        assertFalse(legacy.resetSession());
+        assertEquals(1, old.count("setSchema"));
+    }
+    
+    @Test
+    public void statementClosedWhenQueryTimeoutFails() throws SQLException
+    {
+        source.setQueryTimeout(5);
+        conn.failures.put("Statement.setQueryTimeout", new SQLException("连接已断开", "08006"));
+        try
+        {
+            pooled.createStatement();
+            fail();
+        }
+        catch (SQLException e)
+        {
+            assertEquals("08006", e.getSQLState());
+        }
+        
+        assertTrue(conn.child(0).isClosed());
+        assertTrue(pooled.isBroken());
+    }
+    
+    @Test
+    public void resultSetFatalExceptionMarksBroken() throws SQLException
+    {
+        conn.failures.put("ResultSet.next", new SQLException("连接已断开", "08006"));
+        Statement stmt = pooled.createStatement();
+        ResultSet rs = stmt.executeQuery("select 1");
+        assertSame(stmt, rs.getStatement());
+        assertFalse(pooled.isBroken());
+        try
+        {
+            rs.next();
+            fail();
+        }
+        catch (SQLException e)
+        {
+            assertEquals("08006", e.getSQLState());
+        }
+        
+        assertTrue(pooled.isBroken());
+    }
+    
+    @Test
+    public void abortUsesDriverAbort() throws SQLException
+    {
+        pooled.abort(executor);
+        
+        assertEquals(1, conn.count("abort"));
+        assertTrue(pooled.isClosed());
+        assertTrue(pooled.isBroken());
+        assertEquals(0, tasks.size());
+        assertEquals(1, discarded.size());
+        assertSame(pooled, discarded.get(0));
+    }
+    
+    @Test
+    public void abortClosesOnExecutorWhenNotSupported() throws SQLException
+    {
+        conn.failures.put("abort", new SQLFeatureNotSupportedException("不支持"));
+        pooled.abort(executor);
+        
+        assertEquals(1, tasks.size());
+        assertFalse(conn.isClosed());
+        tasks.get(0).run();
+        assertTrue(conn.isClosed());
+        assertEquals(1, discarded.size());
+    }
+    
+    @Test
+    public void abortClosesOnExecutorWhenDriverAbortFails() throws SQLException
+    {
+        conn.failures.put("abort", new SQLException("连接已断开", "08006"));
+        pooled.abort(executor);
+        
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+        assertTrue(conn.isClosed());
+        assertEquals(1, discarded.size());
+    }
+    
+    @Test
+    public void abortDiscardsWhenExecutorRejects() throws SQLException
+    {
+        conn.failures.put("abort", new SQLException("中止失败"));
+        try
+        {
+            pooled.abort(new Executor()
+            {
+                public void execute(Runnable command)
+                {
+                    throw new RejectedExecutionException("已关闭");
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {// 执行器异常抛出给调用方，连接仍需移出
+        }
+        
+        assertTrue(pooled.isClosed());
+        assertEquals(1, discarded.size());
+    }
+    
+    @Test
+    public void abortTwiceIsIgnored() throws SQLException
+    {
+        pooled.abort(executor);
+        pooled.abort(executor);
+        
+        assertEquals(1, conn.count("abort"));
+        assertEquals(1, discarded.size());
+    }
+    
+    @Test(expected = SQLException.class)
+    public void abortRequiresExecutor() throws SQLException
+    {
+        pooled.abort(null);
+    }
+    
+    @Test
+    public void validateProbesRecentlyUsedConnection() throws InterruptedException
+    {
+        conn.props.put("Valid", false);
+        assertTrue(pooled.isConnectionAvailable());
+        assertEquals(0, conn.count("isValid"));
+        
+        long verifiedTimeMs = pooled.getVerifiedTimeMs();
+        assertFalse(pooled.validate());
+        assertEquals(1, conn.count("isValid"));
+        assertEquals(verifiedTimeMs, pooled.getVerifiedTimeMs());
+        
+        Thread.sleep(5);
+        conn.props.put("Valid", true);
+        assertTrue(pooled.validate());
+        assertEquals(2, conn.count("isValid"));
+        assertTrue(pooled.getVerifiedTimeMs() > verifiedTimeMs);
+    }
+}
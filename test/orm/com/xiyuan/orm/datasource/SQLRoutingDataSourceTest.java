@@ -0,0 +1,189 @@
+package com.xiyuan.orm.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 读写分离数据源测试，从库按活跃比例选择，耗尽的从库不等待直接跳过，都耗尽时回退到主库或在最后一个可用从库上等待
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+public class SQLRoutingDataSourceTest
+{
+    /** 测试用连接池，记录不等待借用和等待获取的调用，以及借出的连接 */
+    private static class StubSource extends SQLDataSource
+    {
+        final List<String> calls = new CopyOnWriteArrayList<>();
+        final List<SQLConnection> lent = new CopyOnWriteArrayList<>();
+        volatile boolean available = true;
+        volatile boolean exhausted;
+        volatile int active;
+        
+        StubSource(String id)
+        {
+            super(id, null, "jdbc:fake", null, null, 1, 10, 60);
+        }
+        
+        @Override
+        public boolean isDbAvailable()
+        {
+            return available;
+        }
+        
+        @Override
+        public int getConnActiveSize()
+        {
+            return active;
+        }
+        
+        @Override
+        SQLConnection tryBorrow()
+        {
+            calls.add("tryBorrow");
+            if (exhausted)
+                return null;
+            
+            return lend();
+        }
+        
+        @Override
+        public Connection getConnection() throws SQLException
+        {
+            calls.add("getConnection");
+            return new ConnectionHandle(lend());
+        }
+        
+        private SQLConnection lend()
+        {
+            SQLConnection conn = new SQLConnection(this, FakeJdbc.connection().<Connection>get());
+            conn.setState(SQLConnection.STATE_ACTIVE);
+            lent.add(conn);
+            return borrowed(conn, System.nanoTime());
+        }
+    }
+    
+    private StubSource primary;
+    private StubSource replica1;
+    private StubSource replica2;
+    private SQLRoutingDataSource routing;
+    
+    @Before
+    public void setUp()
+    {
+        primary = new StubSource("primary");
+        replica1 = new StubSource("replica1");
+        replica2 = new StubSource("replica2");
+        routing = new SQLRoutingDataSource("routing", primary, replica1, replica2);
+    }
+    
+    /** 获取借出连接的连接池 */
+    private SQLDataSource sourceOf(Connection conn) throws SQLException
+    {
+        SQLConnection sqlConn = conn.unwrap(SQLConnection.class);
+        for (StubSource source : new StubSource[] { primary, replica1, replica2 })
+        {
+            if (source.lent.contains(sqlConn))
+                return source;
+        }
+        return null;
+    }
+    
+    @Test
+    public void readPicksLeastLoadedReplica() throws SQLException
+    {
+        replica1.active = 5;
+        replica2.active = 1;
+        
+        Connection conn = routing.getReadConnection();
+        assertSame(replica2, sourceOf(conn));
+        assertTrue(conn.isReadOnly());
+        assertEquals(0, replica1.calls.size());
+        
+        replica2.active = 8;
+        assertSame(replica1, sourceOf(routing.getReadConnection()));
+    }
+    
+    @Test
+    public void exhaustedReplicaIsSkippedWithoutWaiting() throws SQLException
+    {
+        replica1.exhausted = true;
+        replica2.active = 5;
+        
+        assertSame(replica2, sourceOf(routing.getReadConnection()));
+        assertEquals("[tryBorrow]", replica1.calls.toString());
+        assertEquals("[tryBorrow]", replica2.calls.toString());
+    }
+    
+    @Test
+    public void unavailableReplicaIsNotTried() throws SQLException
+    {
+        replica1.available = false;
+        
+        assertSame(replica2, sourceOf(routing.getReadConnection()));
+        assertEquals(0, replica1.calls.size());
+    }
+    
+    @Test
+    public void exhaustedReplicasFallBackToPrimary() throws SQLException
+    {
+        replica1.exhausted = true;
+        replica2.exhausted = true;
+        
+        assertSame(primary, sourceOf(routing.getReadConnection()));
+        assertEquals("[getConnection]", primary.calls.toString());
+        assertEquals("[tryBorrow]", replica1.calls.toString());
+        assertEquals("[tryBorrow]", replica2.calls.toString());
+    }
+    
+    @Test
+    public void exhaustedReplicasWaitOnLastCandidateWithoutPrimaryFallback() throws SQLException
+    {
+        routing.setReadFromPrimary(false);
+        replica1.exhausted = true;
+        replica2.exhausted = true;
+        replica2.active = 5;
+        
+        Connection conn = routing.getReadConnection();
+        assertSame(replica2, sourceOf(conn));
+        assertTrue(conn.isReadOnly());
+        assertEquals("[tryBorrow]", replica1.calls.toString());
+        assertEquals("[tryBorrow, getConnection]", replica2.calls.toString());
+        assertEquals(0, primary.calls.size());
+    }
+    
+    @Test
+    public void noAvailableReplica() throws SQLException
+    {
+        replica1.available = false;
+        replica2.available = false;
+        assertSame(primary, sourceOf(routing.getReadConnection()));
+        
+        routing.setReadFromPrimary(false);
+        try
+        {
+            routing.getReadConnection();
+            fail();
+        }
+        catch (SQLException e)
+        {// 没有可用从库且不回退到主库
+        }
+    }
+    
+    @Test
+    public void writeGoesToPrimary() throws SQLException
+    {
+        assertSame(primary, sourceOf(routing.getConnection()));
+        assertSame(primary, sourceOf(routing.getConnection(false)));
+        assertSame(replica1, sourceOf(routing.getConnection(true)));
+    }
+}
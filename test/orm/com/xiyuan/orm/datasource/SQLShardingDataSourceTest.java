@@ -0,0 +1,244 @@
+package com.xiyuan.orm.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * 分片数据源测试，哈希分片负数和字符串分片键，范围分片的分界值，跨分片查询的排序合并和条数限制
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+public class SQLShardingDataSourceTest
+{
+    /** 测试用分片，不创建物理连接，每次获取返回一个带行数据的模拟连接 */
+    private static class StubShard extends SQLDataSource
+    {
+        final List<FakeJdbc> fakes = new CopyOnWriteArrayList<>();
+        final List<Object> rows;
+        volatile SQLException failure;
+        
+        StubShard(String id, Object... rows)
+        {
+            super(id, null, "jdbc:fake", null, null, 1, 2, 60);
+            this.rows = Arrays.asList(rows);
+        }
+        
+        @Override
+        protected boolean startBefore()
+        {
+            return true;
+        }
+        
+        @Override
+        protected void closeAfter()
+        {
+        }
+        
+        @Override
+        public Connection getConnection() throws SQLException
+        {
+            FakeJdbc fake = FakeJdbc.connection();
+            fake.rows.addAll(rows);
+            if (failure != null)
+                fake.failures.put("PreparedStatement.executeQuery", failure);
+            
+            fakes.add(fake);
+            return fake.get();
+        }
+    }
+    
+    /** 取第一列 */
+    private static final RowMapper<Integer> FIRST_COLUMN = new RowMapper<Integer>()
+    {
+        public Integer map(ResultSet rst) throws SQLException
+        {
+            return (Integer)rst.getObject(1);
+        }
+    };
+    
+    private static final Comparator<Integer> ASC = new Comparator<Integer>()
+    {
+        public int compare(Integer a, Integer b)
+        {
+            return a.compareTo(b);
+        }
+    };
+    
+    private SQLShardingDataSource sharding;
+    
+    @After
+    public void tearDown()
+    {
+        if (sharding != null)
+            sharding.close();
+    }
+    
+    private static SQLDataSource[] shards(int count)
+    {
+        SQLDataSource[] shards = new SQLDataSource[count];
+        for (int i = 0; i < count; i++)
+        {
+            shards[i] = new StubShard("shard" + i);
+        }
+        return shards;
+    }
+    
+    private static long crc32(String key)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(key.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+    
+    @Test
+    public void hashRoutingHandlesNegativeKeys() throws SQLException
+    {
+        SQLShardingDataSource ds = new SQLShardingDataSource("hash", null, shards(3));
+        assertEquals(1, ds.getShardIndex(7));
+        assertEquals(1, ds.getShardIndex(7L));
+        assertEquals(2, ds.getShardIndex(-7));
+        assertEquals(0, ds.getShardIndex(-3));
+        assertEquals(1, ds.getShardIndex(Long.MIN_VALUE));
+        assertEquals(1, ds.getShardIndex(Long.MAX_VALUE));
+    }
+    
+    @Test
+    public void hashRoutingUsesCrc32ForStringKeys() throws SQLException
+    {
+        SQLDataSource[] shards = shards(3);
+        SQLShardingDataSource ds = new SQLShardingDataSource("hash", null, shards);
+        for (String key : new String[] { "user-1", "user-2", "", "中文键", "7" })
+        {
+            int expected = (int)(crc32(key) % 3);
+            assertEquals(expected, ds.getShardIndex(key));
+            assertSame(shards[expected], ds.getShard(key));
+        }
+    }
+    
+    @Test
+    public void rangeKeyEqualToBoundGoesToNextShard() throws SQLException
+    {
+        SQLShardingDataSource ds = new SQLShardingDataSource("range", new long[] { 100, 200 }, shards(3));
+        assertEquals(0, ds.getShardIndex(Long.MIN_VALUE));
+        assertEquals(0, ds.getShardIndex(-5));
+        assertEquals(0, ds.getShardIndex(99));
+        assertEquals(1, ds.getShardIndex(100));
+        assertEquals(1, ds.getShardIndex(199));
+        assertEquals(2, ds.getShardIndex(200));
+        assertEquals(2, ds.getShardIndex(Long.MAX_VALUE));
+        assertEquals(1, ds.getShardIndex(" 150 "));
+    }
+    
+    @Test
+    public void invalidKeysAreRejected()
+    {
+        SQLShardingDataSource ds = new SQLShardingDataSource("range", new long[] { 100 }, shards(2));
+        for (Object key : new Object[] { null, "abc" })
+        {
+            try
+            {
+                ds.getShardIndex(key);
+                fail();
+            }
+            catch (SQLException e)
+            {// 分片键为null或不是数值
+            }
+        }
+    }
+    
+    @Test
+    public void invalidRangesAreRejected()
+    {
+        for (long[] ranges : new long[][] { { 100, 200 }, { 200, 100, 300 }, { 100, 100, 300 } })
+        {
+            try
+            {
+                new SQLShardingDataSource("range", ranges, shards(ranges.length == 2 ? 2 : 4));
+                fail();
+            }
+            catch (IllegalArgumentException e)
+            {// 个数不是分片数-1或不是升序
+            }
+        }
+    }
+    
+    @Test
+    public void queryMergesOrderAndLimit() throws SQLException
+    {
+        StubShard s0 = new StubShard("s0", 1, 5, 9);
+        StubShard s1 = new StubShard("s1", 2, 4, 8);
+        StubShard s2 = new StubShard("s2", 6, 7);
+        sharding = new SQLShardingDataSource("query", null, s0, s1, s2);
+        assertTrue(sharding.start());
+        
+        List<Integer> top = sharding.query("select v from t order by v", new Object[] { 1 }, FIRST_COLUMN, ASC, 4);
+        assertEquals(Arrays.asList(1, 2, 4, 5), top);
+        
+        List<Integer> all = sharding.query("select v from t", null, FIRST_COLUMN, null, 0);
+        assertEquals(Arrays.asList(1, 5, 9, 2, 4, 8, 6, 7), all);
+        
+        // 有限制时每个分片最多取limit条，连接和语句都已关闭
+        for (StubShard shard : new StubShard[] { s0, s1, s2 })
+        {
+            assertEquals(2, shard.fakes.size());
+            FakeJdbc first = shard.fakes.get(0);
+            assertEquals(4, first.child(0).props.get("MaxRows"));
+            assertEquals(1, first.child(0).count("setObject"));
+            assertTrue(first.isClosed());
+            assertTrue(first.child(0).isClosed());
+            assertEquals(0, shard.fakes.get(1).child(0).count("setMaxRows"));
+        }
+    }
+    
+    @Test
+    public void queryLimitSmallerThanShardRows() throws SQLException
+    {
+        sharding = new SQLShardingDataSource("query", null, new StubShard("s0", 3, 4, 5), new StubShard("s1", 1, 2, 6));
+        assertTrue(sharding.start());
+        
+        assertEquals(Arrays.asList(1, 2), sharding.query("select v from t order by v", null, FIRST_COLUMN, ASC, 2));
+    }
+    
+    @Test
+    public void queryFailsWhenAnyShardFails() throws SQLException
+    {
+        StubShard s0 = new StubShard("s0", 1);
+        StubShard s1 = new StubShard("s1", 2);
+        s1.failure = new SQLException("分片不可用", "08006");
+        sharding = new SQLShardingDataSource("query", null, s0, s1);
+        assertTrue(sharding.start());
+        
+        try
+        {
+            sharding.query("select v from t", null, FIRST_COLUMN, ASC, 0);
+            fail();
+        }
+        catch (SQLException e)
+        {
+            assertEquals("08006", e.getSQLState());
+        }
+        assertTrue(s0.fakes.get(0).isClosed());
+        assertTrue(s1.fakes.get(0).isClosed());
+    }
+    
+    @Test(expected = SQLException.class)
+    public void queryRequiresStart() throws SQLException
+    {
+        new SQLShardingDataSource("query", null, shards(2)).query("select 1", null, FIRST_COLUMN, null, 0);
+    }
+}
@@ -0,0 +1,175 @@
+package com.xiyuan.orm.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 语句缓存测试，放回时清除并恢复语句设置，LRU淘汰和清空后不再缓存
+ *
+ * @version v1.0.0 @author lgz 2026-10-18 新建与整理
+ */
+public class StatementCacheTest
+{
+    private SQLDataSource source;
+    private FakeJdbc conn;
+    private StatementCache cache;
+    
+    @Before
+    public void setUp()
+    {
+        source = new SQLDataSource("test", null, "jdbc:fake", null, null, 1, 2, 60);
+        conn = FakeJdbc.connection();
+        cache = new StatementCache(source, 2);
+    }
+    
+    private FakeJdbc newStatement(String sql) throws SQLException
+    {
+        conn.<Connection>get().prepareStatement(sql);
+        return conn.child(conn.children.size() - 1);
+    }
+    
+    private static StatementCache.Key key(String sql)
+    {
+        return new StatementCache.Key(false, sql, -1, -1, -1, -1, null, null);
+    }
+    
+    @Test
+    public void putRestoresChangedSettings() throws SQLException
+    {
+        FakeJdbc stmt = newStatement("select 1");
+        stmt.props.put("FetchSize", 10);
+        PreparedStatement ps = stmt.get();
+        
+        StatementCache.Settings settings = new StatementCache.Settings();
+        settings.beforeInvoke(ps, "setFetchSize");
+        ps.setFetchSize(500);
+        settings.beforeInvoke(ps, "setMaxRows");
+        ps.setMaxRows(5);
+        settings.beforeInvoke(ps, "setMaxRows");
+        ps.setMaxRows(7);
+        settings.beforeInvoke(ps, "setQueryTimeout");
+        ps.setQueryTimeout(30);
+        settings.beforeInvoke(ps, "setEscapeProcessing");
+        ps.setEscapeProcessing(false);
+        
+        cache.put(key("select 1"), ps, settings);
+        
+        assertEquals(10, stmt.props.get("FetchSize"));
+        assertEquals(0, stmt.props.get("MaxRows"));
+        assertEquals(0, stmt.props.get("QueryTimeout"));
+        assertEquals(true, stmt.props.get("EscapeProcessing"));
+        assertEquals(1, stmt.count("clearParameters"));
+        assertSame(ps, cache.take(key("select 1")));
+        assertEquals(0, cache.size());
+        assertEquals(1, source.getStmtCacheHits());
+    }
+    
+    @Test
+    public void putSkipsUnchangedSettings() throws SQLException
+    {
+        FakeJdbc stmt = newStatement("select 1");
+        PreparedStatement ps = stmt.get();
+        
+        StatementCache.Settings settings = new StatementCache.Settings();
+        settings.beforeInvoke(ps, "executeQuery");
+        settings.beforeInvoke(ps, "setString");
+        cache.put(key("select 1"), ps, settings);
+        
+        assertEquals(0, stmt.count("setFetchSize") + stmt.count("setMaxRows") + stmt.count("setQueryTimeout") + stmt.count("setEscapeProcessing"));
+        assertEquals(1, cache.size());
+    }
+    
+    @Test
+    public void restoreFailureClosesStatement() throws SQLException
+    {
+        FakeJdbc stmt = newStatement("select 1");
+        PreparedStatement ps = stmt.get();
+        
+        StatementCache.Settings settings = new StatementCache.Settings();
+        settings.beforeInvoke(ps, "setFetchDirection");
+        ps.setFetchDirection(1001);
+        stmt.failures.put("setFetchDirection", new SQLException("不支持"));
+        cache.put(key("select 1"), ps, settings);
+        
+        assertTrue(stmt.isClosed());
+        assertNull(cache.take(key("select 1")));
+        assertEquals(1, source.getStmtCacheMisses());
+    }
+    
+    @Test
+    public void evictsLeastRecentlyUsed() throws SQLException
+    {
+        FakeJdbc s1 = newStatement("a");
+        FakeJdbc s2 = newStatement("b");
+        FakeJdbc s3 = newStatement("c");
+        cache.put(key("a"), s1.<PreparedStatement>get(), new StatementCache.Settings());
+        cache.put(key("b"), s2.<PreparedStatement>get(), new StatementCache.Settings());
+        cache.put(key("c"), s3.<PreparedStatement>get(), new StatementCache.Settings());
+        
+        assertTrue(s1.isClosed());
+        assertFalse(s2.isClosed());
+        assertFalse(s3.isClosed());
+        assertEquals(2, cache.size());
+        assertEquals(1, source.getStmtCacheEvictions());
+    }
+    
+    @Test
+    public void duplicateKeyClosesStatement() throws SQLException
+    {
+        FakeJdbc s1 = newStatement("a");
+        FakeJdbc s2 = newStatement("a");
+        cache.put(key("a"), s1.<PreparedStatement>get(), new StatementCache.Settings());
+        cache.put(key("a"), s2.<PreparedStatement>get(), new StatementCache.Settings());
+        
+        assertFalse(s1.isClosed());
+        assertTrue(s2.isClosed());
+        assertEquals(0, source.getStmtCacheEvictions());
+    }
+    
+    @Test
+    public void putAfterClearClosesStatement() throws SQLException
+    {
+        FakeJdbc s1 = newStatement("a");
+        FakeJdbc s2 = newStatement("b");
+        cache.put(key("a"), s1.<PreparedStatement>get(), new StatementCache.Settings());
+        cache.clear();
+        assertTrue(s1.isClosed());
+        
+        cache.put(key("b"), s2.<PreparedStatement>get(), new StatementCache.Settings());
+        assertTrue(s2.isClosed());
+        assertEquals(0, cache.size());
+    }
+    
+    @Test
+    public void connectionReusesStatementWithDefaultSettings() throws SQLException
+    {
+        source.setStmtCacheSize(4);
+        SQLConnection pooled = new SQLConnection(source, conn.<Connection>get());
+        
+        PreparedStatement ps = pooled.prepareStatement("select 1");
+        ps.setMaxRows(100);
+        ps.setFetchSize(50);
+        ps.close();
+        
+        FakeJdbc stmt = conn.child(conn.children.size() - 1);
+        assertEquals(0, stmt.props.get("MaxRows"));
+        assertEquals(0, stmt.props.get("FetchSize"));
+        assertFalse(stmt.isClosed());
+        
+        PreparedStatement again = pooled.prepareStatement("select 1");
+        assertEquals(0, again.getMaxRows());
+        assertEquals(0, again.getFetchSize());
+        assertEquals(0, pooled.getStmtCacheSize());
+        assertEquals(1, conn.count("prepareStatement"));
+    }
+}